@@ -0,0 +1,511 @@
+/*	BinaryTraceFile
+	Compact, versioned binary trace format, with a CSV <-> binary converter.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Reader (as a TraceSource) and writer for TraceTables.
+		- Converter entry point.
+		- Pruned columns skipped over without being decoded.
+		- Bug fix: tests with no rows no longer break reading. Converter checks its output.
+
+	README:
+		- Layout (big-endian):
+			"STRB", version
+			column count, then per column: name length, name, type tag
+			tests, one after the other
+			index: test count, then per test: offset, row count
+			offset of the index (last 8 bytes of the file)
+		- Each column of a test starts with an encoding byte. A constant column
+		  stores its value once. Otherwise bools are packed 8 to a byte, ints are
+		  zig-zag varints, reals take 8 bytes (or varints, if every value in the
+		  column is a whole number) and strings a length and ISO-8859-1 bytes.
+		- Converter usage: BinaryTraceFile <input> <output> <isOffset> [model]
+		  A binary input is written out as CSV, anything else as binary. The
+		  model, if given, is used to type the columns of a CSV input. A
+		  binary output is read back and checked against the input.
+*/
+
+package steering;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+public class BinaryTraceFile implements TraceSource {
+
+	public static final String EXTENSION=".trb";
+	private static final int MAGIC=0x53545242; // "STRB"
+	private static final int VERSION=1;
+
+	// Column encodings
+	private static final byte CONSTANT=0;
+	private static final byte FULL=1;
+	private static final byte VARINT=2;
+
+	private String filename;
+	private String header;
+	private int[] fileTypes;
+	private long[] testOffsets;
+	private int[] rowCounts;
+
+	// Opens a binary trace and reads its header and index.
+	public BinaryTraceFile(String file) throws IOException{
+		filename=file;
+		RandomAccessFile raf=new RandomAccessFile(filename,"r");
+
+		try{
+			if(raf.readInt()!=MAGIC){
+				throw new IOException("Not a binary trace: "+filename);
+			}
+			int version=raf.readInt();
+			if(version!=VERSION){
+				throw new IOException("Unsupported binary trace version "+version+": "+filename);
+			}
+
+			int columns=raf.readInt();
+			StringBuilder head=new StringBuilder();
+			fileTypes=new int[columns];
+			for(int col=0;col<columns;col++){
+				byte[] name=new byte[raf.readInt()];
+				raf.readFully(name);
+				fileTypes[col]=raf.readByte();
+				if(col>0){
+					head.append(',');
+				}
+				head.append(new String(name,StandardCharsets.ISO_8859_1));
+			}
+			header=head.toString();
+
+			raf.seek(raf.length()-8);
+			long indexStart=raf.readLong();
+			raf.seek(indexStart);
+			int tests=raf.readInt();
+			testOffsets=new long[tests+1];
+			rowCounts=new int[tests];
+			for(int test=0;test<tests;test++){
+				testOffsets[test]=raf.readLong();
+				rowCounts[test]=raf.readInt();
+			}
+			// The index follows the last test.
+			testOffsets[tests]=indexStart;
+		}finally{
+			raf.close();
+		}
+	}
+
+	// Checks the magic number at the start of a file.
+	public static boolean isBinary(String file){
+		try{
+			FileInputStream in=new FileInputStream(file);
+			try{
+				byte[] magic=new byte[4];
+				return in.read(magic)==4 && ByteBuffer.wrap(magic).getInt()==MAGIC;
+			}finally{
+				in.close();
+			}
+		}catch(IOException e){
+			return false;
+		}
+	}
+
+	public String getFilename(){
+		return filename;
+	}
+
+	public String getHeader(){
+		return header;
+	}
+
+	public int getColumnType(int col){
+		return fileTypes[col];
+	}
+
+	public int getTestCount(){
+		return rowCounts.length;
+	}
+
+	public int getRowCount(int test){
+		return rowCounts[test];
+	}
+
+	// Reads one test from disk and decodes it into the requested column types.
+	public TraceBlock readTest(int test, int[] types, int[] fields){
+		byte[] bytes=new byte[(int)(testOffsets[test+1]-testOffsets[test])];
+
+		try{
+			RandomAccessFile raf=new RandomAccessFile(filename,"r");
+			try{
+				raf.seek(testOffsets[test]);
+				raf.readFully(bytes);
+			}finally{
+				raf.close();
+			}
+		}catch(IOException e){
+			throw new UncheckedIOException(e);
+		}
+
+		ByteBuffer in=ByteBuffer.wrap(bytes);
+		int rows=rowCounts[test];
+		TraceBlock block=new TraceBlock(types,rows);
+		block.setRowCount(rows);
+
+		int col=0;
+		for(int field=0;field<fileTypes.length;field++){
+			if(fields==null || (col<fields.length && fields[col]==field)){
+				this.readColumn(in,block,field,col,rows);
+				col++;
+			}else{
+				this.skipColumn(in,field,rows);
+			}
+		}
+
+		return block;
+	}
+
+	// Decodes a column. If the table wants a different type than the file
+	// holds, values go through their text form.
+	private void readColumn(ByteBuffer in, TraceBlock block, int field, int col, int rows){
+		int type=fileTypes[field];
+		byte encoding=in.get();
+		// An empty test stores the encoding byte alone.
+		if(rows==0){
+			return;
+		}
+		boolean constant=(encoding==CONSTANT);
+		boolean sameType=(block.getType(col)==type);
+		Object column=block.getColumn(col);
+
+		if(type==TraceTable.BOOL){
+			byte[] bits=null;
+			boolean value=false;
+			if(constant){
+				value=(in.get()!=0);
+			}else{
+				bits=new byte[(rows+7)/8];
+				in.get(bits);
+			}
+			for(int row=0;row<rows;row++){
+				if(!constant){
+					value=((bits[row>>3]>>(row&7))&1)!=0;
+				}
+				if(sameType){
+					((boolean[])column)[row]=value;
+				}else{
+					block.setValue(row,col,value ? "1" : "0");
+				}
+			}
+		}else if(type==TraceTable.INT){
+			int value=0;
+			if(constant){
+				value=in.getInt();
+			}
+			for(int row=0;row<rows;row++){
+				if(!constant){
+					value=(int)readVarint(in);
+				}
+				if(sameType){
+					((int[])column)[row]=value;
+				}else{
+					block.setValue(row,col,Integer.toString(value));
+				}
+			}
+		}else if(type==TraceTable.REAL){
+			double value=0.0;
+			if(constant){
+				value=in.getDouble();
+			}
+			for(int row=0;row<rows;row++){
+				if(encoding==VARINT){
+					value=readVarint(in);
+				}else if(!constant){
+					value=in.getDouble();
+				}
+				if(sameType){
+					((double[])column)[row]=value;
+				}else{
+					block.setValue(row,col,TraceBlock.formatReal(value));
+				}
+			}
+		}else{
+			String value="";
+			if(constant){
+				value=readString(in);
+			}
+			for(int row=0;row<rows;row++){
+				if(!constant){
+					value=readString(in);
+				}
+				block.setValue(row,col,value);
+			}
+		}
+	}
+
+	// Moves past a column that is not wanted.
+	private void skipColumn(ByteBuffer in, int field, int rows){
+		int type=fileTypes[field];
+		byte encoding=in.get();
+		if(rows==0){
+			return;
+		}
+		boolean constant=(encoding==CONSTANT);
+		int values=rows;
+		if(constant){
+			values=1;
+		}
+
+		if(type==TraceTable.BOOL){
+			if(constant){
+				in.get();
+			}else{
+				in.position(in.position()+(rows+7)/8);
+			}
+		}else if(type==TraceTable.INT){
+			if(constant){
+				in.getInt();
+			}else{
+				for(int row=0;row<rows;row++){
+					readVarint(in);
+				}
+			}
+		}else if(type==TraceTable.REAL){
+			if(encoding==VARINT){
+				for(int row=0;row<rows;row++){
+					readVarint(in);
+				}
+			}else{
+				in.position(in.position()+8*values);
+			}
+		}else{
+			for(int value=0;value<values;value++){
+				int length=in.getInt();
+				in.position(in.position()+length);
+			}
+		}
+	}
+
+	// Zig-zag varint, as written by writeVarint.
+	private static long readVarint(ByteBuffer in){
+		long raw=0;
+		int shift=0;
+		byte next;
+
+		do{
+			next=in.get();
+			raw|=(long)(next&0x7F)<<shift;
+			shift+=7;
+		}while((next&0x80)!=0);
+
+		return (raw>>>1)^-(raw&1);
+	}
+
+	private static void writeVarint(DataOutputStream out, long value) throws IOException{
+		long raw=(value<<1)^(value>>63);
+
+		while((raw&~0x7FL)!=0){
+			out.writeByte((int)((raw&0x7F)|0x80));
+			raw>>>=7;
+		}
+		out.writeByte((int)raw);
+	}
+
+	private static String readString(ByteBuffer in){
+		byte[] text=new byte[in.getInt()];
+		in.get(text);
+		return new String(text,StandardCharsets.ISO_8859_1);
+	}
+
+	// Writes a trace in binary format.
+	public static void write(TraceTable trace, String file) throws IOException{
+		FileOutputStream stream=new FileOutputStream(file);
+		DataOutputStream out=new DataOutputStream(new BufferedOutputStream(stream,1<<16));
+		String[] names=trace.getHeader();
+		long[] offsets=new long[trace.getTestCount()];
+		int[] rows=new int[trace.getTestCount()];
+
+		try{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(names.length);
+			for(int col=0;col<names.length;col++){
+				byte[] name=names[col].getBytes(StandardCharsets.ISO_8859_1);
+				out.writeInt(name.length);
+				out.write(name);
+				out.writeByte(trace.getType(col));
+			}
+
+			for(int test=0;test<trace.getTestCount();test++){
+				TraceBlock block=trace.getTest(test);
+				out.flush();
+				offsets[test]=stream.getChannel().position();
+				rows[test]=block.getRowCount();
+
+				for(int col=0;col<names.length;col++){
+					writeColumn(out,block,col);
+				}
+			}
+
+			out.flush();
+			long indexStart=stream.getChannel().position();
+			out.writeInt(offsets.length);
+			for(int test=0;test<offsets.length;test++){
+				out.writeLong(offsets[test]);
+				out.writeInt(rows[test]);
+			}
+			out.writeLong(indexStart);
+		}finally{
+			out.close();
+		}
+	}
+
+	private static void writeColumn(DataOutputStream out, TraceBlock block, int col) throws IOException{
+		int rows=block.getRowCount();
+		int type=block.getType(col);
+		Object column=block.getColumn(col);
+		boolean constant=isConstant(block,col);
+		byte encoding=FULL;
+		if(constant){
+			encoding=CONSTANT;
+		}else if(type==TraceTable.INT || (type==TraceTable.REAL && isWhole((double[])column,rows))){
+			encoding=VARINT;
+		}
+
+		out.writeByte(encoding);
+		if(rows==0){
+			return;
+		}
+
+		if(type==TraceTable.BOOL){
+			boolean[] values=(boolean[])column;
+			if(constant){
+				out.writeByte(values[0] ? 1 : 0);
+			}else{
+				byte[] bits=new byte[(rows+7)/8];
+				for(int row=0;row<rows;row++){
+					if(values[row]){
+						bits[row>>3]|=(1<<(row&7));
+					}
+				}
+				out.write(bits);
+			}
+		}else if(type==TraceTable.INT){
+			int[] values=(int[])column;
+			if(constant){
+				out.writeInt(values[0]);
+			}else{
+				for(int row=0;row<rows;row++){
+					writeVarint(out,values[row]);
+				}
+			}
+		}else if(type==TraceTable.REAL){
+			double[] values=(double[])column;
+			for(int row=0;row<(constant ? 1 : rows);row++){
+				if(encoding==VARINT){
+					writeVarint(out,(long)values[row]);
+				}else{
+					out.writeDouble(values[row]);
+				}
+			}
+		}else{
+			for(int row=0;row<(constant ? 1 : rows);row++){
+				byte[] text=block.getString(row,col).getBytes(StandardCharsets.ISO_8859_1);
+				out.writeInt(text.length);
+				out.write(text);
+			}
+		}
+	}
+
+	// True if every value is a whole number that a varint can hold exactly.
+	private static boolean isWhole(double[] values, int rows){
+		for(int row=0;row<rows;row++){
+			double value=values[row];
+			if(value!=Math.rint(value) || Math.abs(value)>(1L<<52) || (value==0.0 && 1.0/value<0)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// True if every row of a column holds the same value (or there are no rows).
+	private static boolean isConstant(TraceBlock block, int col){
+		Object column=block.getColumn(col);
+
+		for(int row=1;row<block.getRowCount();row++){
+			switch(block.getType(col)){
+			case TraceTable.BOOL:
+				if(((boolean[])column)[row]!=((boolean[])column)[0]){
+					return false;
+				}
+				break;
+			case TraceTable.INT:
+				if(((int[])column)[row]!=((int[])column)[0]){
+					return false;
+				}
+				break;
+			case TraceTable.REAL:
+				if(Double.doubleToLongBits(((double[])column)[row])!=Double.doubleToLongBits(((double[])column)[0])){
+					return false;
+				}
+				break;
+			default:
+				if(!((String[])column)[row].equals(((String[])column)[0])){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// Converter between CSV and binary traces.
+	public static void main(String[] args) throws Exception{
+		if(args.length<3){
+			System.out.println("Usage: BinaryTraceFile <input> <output> <isOffset> [model]");
+			return;
+		}
+
+		boolean isOffset=Boolean.parseBoolean(args[2]);
+		HashMap<String,String> typeMap=null;
+		if(args.length>3){
+			typeMap=new LustreModel(args[3]).getTypeMap();
+		}
+
+		WorkerFunctions worker=new WorkerFunctions(null);
+		TraceTable trace=worker.readTraceFile(args[0], isOffset, typeMap);
+		if(isBinary(args[0])){
+			worker.writeTraceToFile(trace, args[1], isOffset);
+		}else{
+			write(trace, args[1]);
+			check(trace, args[1]);
+		}
+	}
+
+	// Reads a binary trace back and compares it, test by test and cell by
+	// cell, with the trace it was written from.
+	public static void check(TraceTable trace, String file) throws Exception{
+		BinaryTraceFile binary=new BinaryTraceFile(file);
+		if(binary.getTestCount()!=trace.getTestCount()){
+			throw new SteeringDataException("Round trip of "+file+": "+binary.getTestCount()+" tests, expected "+trace.getTestCount());
+		}
+
+		for(int test=0;test<trace.getTestCount();test++){
+			TraceBlock expected=trace.getTest(test);
+			TraceBlock actual=binary.readTest(test, expected.getTypes(), null);
+			if(actual.getRowCount()!=expected.getRowCount()){
+				throw new SteeringDataException("Round trip of "+file+", test "+test+": "+actual.getRowCount()+" rows, expected "+expected.getRowCount());
+			}
+			for(int row=0;row<expected.getRowCount();row++){
+				if(!actual.getRow(row).equals(expected.getRow(row))){
+					throw new SteeringDataException("Round trip of "+file+", test "+test+", step "+row+": "+actual.getRow(row)+", expected "+expected.getRow(row));
+				}
+			}
+		}
+		System.out.println("Checked "+file+": "+trace.getTestCount()+" tests");
+	}
+}
@@ -0,0 +1,35 @@
+/*	BisectionSearch
+	Threshold search halving the range between the bounds.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Ladders split the range in equal parts.
+
+	README:
+		- Each call halves the range, whatever the answer. About
+		  log2(score/PRECISION) calls reach the best score.
+		- A ladder of n goals splits the range in n+1 equal parts, so each
+		  call cuts it by n+1.
+*/
+
+package steering;
+
+public class BisectionSearch extends ThresholdSearch {
+
+	protected double chooseGoal(){
+		return (low+high)/2;
+	}
+
+	protected double[] chooseGoals(double goal, int rungs){
+		double[] goals=new double[rungs];
+		for(int rung=0;rung<rungs;rung++){
+			goals[rung]=low+(high-low)*(rung+1)/(rungs+1);
+		}
+		return goals;
+	}
+
+	public String getName(){
+		return "bisection";
+	}
+}
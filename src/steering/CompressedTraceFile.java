@@ -0,0 +1,405 @@
+/*	CompressedTraceFile
+	Compressed (gzip/deflate) trace files, read without unpacking them to disk.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Block-compressed gzip layout, one gzip member per test.
+		- Tests of a block-compressed trace decompressed individually, on demand.
+		- Other gzip and deflate (zlib) traces decompressed as a stream.
+		- Writer (tests compressed in parallel) and converter entry point.
+		- Only the columns asked for are decoded.
+
+	README:
+		- A block-compressed trace is an ordinary .gz file: gunzip turns it back
+		  into the CSV trace. Each test (with its header, if repeated, and the
+		  blank line after it) is a separate gzip member. The extra field of each
+		  member holds, under the ID "ST": the size of the member, the number of
+		  rows in the test, and whether it starts with a header line.
+		- Any other .gz file (or a zlib stream named *.deflate or *.zz) is read
+		  from start to end, once, when the trace is opened.
+		- Converter usage: CompressedTraceFile <input> <output.gz> <isOffset>
+*/
+
+package steering;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+public class CompressedTraceFile implements TraceSource {
+
+	public static final String EXTENSION=".gz";
+
+	// Fixed gzip member header, plus the extra field
+	private static final int GZIP_HEADER=10;
+	private static final int EXTRA_LENGTH=13;
+	private static final int MEMBER_HEADER=GZIP_HEADER+2+EXTRA_LENGTH;
+	private static final int GZIP_TRAILER=8;
+	private static final byte FEXTRA=4;
+
+	private String filename;
+	private String header;
+	private long[] memberOffsets;
+	private int[] memberSizes;
+	private int[] rowCounts;
+	private boolean[] hasHeader;
+
+	// Opens a block-compressed trace, hopping from member header to member header.
+	public CompressedTraceFile(String file) throws IOException{
+		filename=file;
+		ArrayList<long[]> members=new ArrayList<long[]>();
+		RandomAccessFile raf=new RandomAccessFile(filename,"r");
+
+		try{
+			long offset=0;
+			long length=raf.length();
+			byte[] head=new byte[MEMBER_HEADER];
+			while(offset<length){
+				raf.seek(offset);
+				raf.readFully(head);
+				if(!isBlockHeader(head)){
+					throw new IOException("Not a block-compressed trace: "+filename+" (at "+offset+")");
+				}
+				int size=readInt(head,16);
+				members.add(new long[]{offset,size,readInt(head,20),head[24]});
+				offset+=size;
+			}
+		}finally{
+			raf.close();
+		}
+
+		memberOffsets=new long[members.size()];
+		memberSizes=new int[members.size()];
+		rowCounts=new int[members.size()];
+		hasHeader=new boolean[members.size()];
+		for(int test=0;test<members.size();test++){
+			long[] member=members.get(test);
+			memberOffsets[test]=member[0];
+			memberSizes[test]=(int)member[1];
+			rowCounts[test]=(int)member[2];
+			hasHeader[test]=(member[3]!=0);
+		}
+
+		header="";
+		if(memberOffsets.length>0){
+			ArrayList<String> lines=this.readLines(0);
+			if(!lines.isEmpty()){
+				header=lines.get(0);
+			}
+		}
+	}
+
+	// True if the file starts with the gzip magic number.
+	public static boolean isGzip(String file){
+		byte[] head=readStart(file,2);
+		return head!=null && (head[0]&0xFF)==0x1F && (head[1]&0xFF)==0x8B;
+	}
+
+	// True if the file is a gzip file written in the block-compressed layout.
+	public static boolean isBlocked(String file){
+		byte[] head=readStart(file,MEMBER_HEADER);
+		return head!=null && isBlockHeader(head);
+	}
+
+	// Raw deflate streams are only recognized by name, a CSV header could
+	// start with the same bytes.
+	public static boolean isDeflate(String file){
+		return file.endsWith(".deflate") || file.endsWith(".zz");
+	}
+
+	private static byte[] readStart(String file, int count){
+		try{
+			FileInputStream in=new FileInputStream(file);
+			try{
+				byte[] head=new byte[count];
+				int read=0;
+				while(read<count){
+					int got=in.read(head,read,count-read);
+					if(got==-1){
+						return null;
+					}
+					read+=got;
+				}
+				return head;
+			}finally{
+				in.close();
+			}
+		}catch(IOException e){
+			return null;
+		}
+	}
+
+	private static boolean isBlockHeader(byte[] head){
+		return (head[0]&0xFF)==0x1F && (head[1]&0xFF)==0x8B && head[2]==8 && (head[3]&FEXTRA)!=0
+				&& readShort(head,10)==EXTRA_LENGTH && head[12]=='S' && head[13]=='T' && readShort(head,14)==9;
+	}
+
+	public String getFilename(){
+		return filename;
+	}
+
+	public String getHeader(){
+		return header;
+	}
+
+	// Compressed CSV columns carry no type information.
+	public int getColumnType(int col){
+		return TraceTable.STRING;
+	}
+
+	public int getTestCount(){
+		return rowCounts.length;
+	}
+
+	public int getRowCount(int test){
+		return rowCounts[test];
+	}
+
+	// Decompresses one test and decodes its rows into a block.
+	public TraceBlock readTest(int test, int[] types, int[] fields){
+		ArrayList<String> lines;
+		try{
+			lines=this.readLines(test);
+		}catch(IOException e){
+			throw new UncheckedIOException(e);
+		}
+
+		int first=0;
+		if(hasHeader[test]){
+			first=1;
+		}
+		TraceBlock block=new TraceBlock(types,rowCounts[test]);
+		for(int row=0;row<rowCounts[test];row++){
+			block.appendRow(lines.get(first+row),fields);
+		}
+
+		return block;
+	}
+
+	// Decompresses one member and splits it into lines.
+	private ArrayList<String> readLines(int test) throws IOException{
+		byte[] member=new byte[memberSizes[test]];
+		RandomAccessFile raf=new RandomAccessFile(filename,"r");
+		try{
+			raf.seek(memberOffsets[test]);
+			raf.readFully(member);
+		}finally{
+			raf.close();
+		}
+
+		int expectedCrc=readInt(member,member.length-8);
+		byte[] text=new byte[readInt(member,member.length-4)];
+		Inflater inflater=new Inflater(true);
+		try{
+			inflater.setInput(member,MEMBER_HEADER,member.length-MEMBER_HEADER-GZIP_TRAILER);
+			int done=0;
+			while(done<text.length){
+				int got=inflater.inflate(text,done,text.length-done);
+				if(got==0 && (inflater.finished() || inflater.needsInput())){
+					break;
+				}
+				done+=got;
+			}
+			if(done!=text.length){
+				throw new IOException("Truncated test "+test+" in "+filename);
+			}
+		}catch(DataFormatException e){
+			throw new IOException("Corrupt test "+test+" in "+filename,e);
+		}finally{
+			inflater.end();
+		}
+
+		CRC32 crc=new CRC32();
+		crc.update(text);
+		if((int)crc.getValue()!=expectedCrc){
+			throw new IOException("Checksum mismatch for test "+test+" in "+filename);
+		}
+
+		ArrayList<String> lines=new ArrayList<String>();
+		int lineStart=0;
+		for(int pos=0;pos<=text.length;pos++){
+			if(pos==text.length || text[pos]=='\n'){
+				if(pos==text.length && lineStart==pos){
+					break;
+				}
+				int end=pos;
+				if(end>lineStart && text[end-1]=='\r'){
+					end--;
+				}
+				lines.add(new String(text,lineStart,end-lineStart,StandardCharsets.ISO_8859_1));
+				lineStart=pos+1;
+			}
+		}
+
+		return lines;
+	}
+
+	// Reads a gzip or deflate trace that is not block-compressed, as a stream.
+	// Follows the same rules as an uncompressed trace: blank lines separate
+	// tests, and the header is on the first line (and on the first line of
+	// every test, if isOffset is set). Only the variables in keep are stored
+	// (null keeps all).
+	public static TraceTable readStream(String file, boolean isOffset, HashMap<String,String> typeMap, Collection<String> keep) throws IOException{
+		InputStream raw=new FileInputStream(file);
+		InputStream in;
+		if(isDeflate(file)){
+			in=new InflaterInputStream(raw,new Inflater(),1<<16);
+		}else{
+			in=new GZIPInputStream(raw,1<<16);
+		}
+		BufferedReader reader=new BufferedReader(new InputStreamReader(in,StandardCharsets.ISO_8859_1),1<<16);
+
+		try{
+			String line=reader.readLine();
+			if(line==null){
+				return new TraceTable("",typeMap,keep);
+			}
+			TraceTable trace=new TraceTable(line,typeMap,keep);
+			ArrayList<String> rows=new ArrayList<String>();
+			boolean testHeader=false;
+
+			while((line=reader.readLine())!=null){
+				if(line.equals("")){
+					trace.addTest(rows);
+					rows.clear();
+					testHeader=isOffset;
+				}else if(testHeader){
+					testHeader=false;
+				}else{
+					rows.add(line);
+				}
+			}
+			trace.addTest(rows);
+
+			return trace;
+		}finally{
+			reader.close();
+		}
+	}
+
+	// Writes a trace in the block-compressed layout. Tests are compressed in
+	// parallel, then written in order.
+	public static void write(final TraceTable trace, String file, final boolean isOffset) throws IOException{
+		ArrayList<ForkJoinTask<byte[]>> members=new ArrayList<ForkJoinTask<byte[]>>();
+		final int tests=trace.getTestCount();
+
+		for(int test=0;test<tests;test++){
+			final int current=test;
+			members.add(ForkJoinPool.commonPool().submit(new Callable<byte[]>(){
+				public byte[] call() throws IOException{
+					return compressTest(trace,current,isOffset,current==tests-1);
+				}
+			}));
+		}
+
+		OutputStream out=new FileOutputStream(file);
+		try{
+			for(ForkJoinTask<byte[]> member: members){
+				out.write(member.join());
+			}
+		}finally{
+			out.close();
+		}
+	}
+
+	// Renders a test as it would appear in a CSV trace, and compresses it
+	// into one gzip member.
+	private static byte[] compressTest(TraceTable trace, int test, boolean isOffset, boolean last) throws IOException{
+		StringBuilder text=new StringBuilder();
+		boolean withHeader=(isOffset || test==0);
+		if(withHeader){
+			text.append(trace.getHeaderLine()).append('\n');
+		}
+		TraceBlock block=trace.getTest(test);
+		for(int row=0;row<block.getRowCount();row++){
+			text.append(block.getRow(row)).append('\n');
+		}
+		if(!last){
+			text.append('\n');
+		}
+		byte[] raw=text.toString().getBytes(StandardCharsets.ISO_8859_1);
+
+		Deflater deflater=new Deflater(Deflater.DEFAULT_COMPRESSION,true);
+		ByteArrayOutputStream body=new ByteArrayOutputStream(raw.length/4+64);
+		try{
+			deflater.setInput(raw);
+			deflater.finish();
+			byte[] buffer=new byte[1<<16];
+			while(!deflater.finished()){
+				body.write(buffer,0,deflater.deflate(buffer));
+			}
+		}finally{
+			deflater.end();
+		}
+
+		CRC32 crc=new CRC32();
+		crc.update(raw);
+		int size=MEMBER_HEADER+body.size()+GZIP_TRAILER;
+		ByteArrayOutputStream member=new ByteArrayOutputStream(size);
+		member.write(new byte[]{0x1F,(byte)0x8B,8,FEXTRA,0,0,0,0,0,(byte)0xFF});
+		writeShort(member,EXTRA_LENGTH);
+		member.write('S');
+		member.write('T');
+		writeShort(member,9);
+		writeInt(member,size);
+		writeInt(member,block.getRowCount());
+		member.write(withHeader ? 1 : 0);
+		body.writeTo(member);
+		writeInt(member,(int)crc.getValue());
+		writeInt(member,raw.length);
+
+		return member.toByteArray();
+	}
+
+	// gzip fields are little-endian
+	private static int readShort(byte[] bytes, int pos){
+		return (bytes[pos]&0xFF)|((bytes[pos+1]&0xFF)<<8);
+	}
+
+	private static int readInt(byte[] bytes, int pos){
+		return readShort(bytes,pos)|(readShort(bytes,pos+2)<<16);
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value){
+		out.write(value&0xFF);
+		out.write((value>>>8)&0xFF);
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int value){
+		writeShort(out,value&0xFFFF);
+		writeShort(out,(value>>>16)&0xFFFF);
+	}
+
+	// Converts a trace (CSV, binary or compressed) to the block-compressed layout.
+	public static void main(String[] args) throws Exception{
+		if(args.length<3){
+			System.out.println("Usage: CompressedTraceFile <input> <output.gz> <isOffset>");
+			return;
+		}
+
+		boolean isOffset=Boolean.parseBoolean(args[2]);
+		WorkerFunctions worker=new WorkerFunctions(null);
+		write(worker.readTraceFile(args[0], isOffset, null), args[1], isOffset);
+	}
+}
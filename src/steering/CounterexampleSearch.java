@@ -0,0 +1,48 @@
+/*	CounterexampleSearch
+	Threshold search jumping to just under each counterexample found.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+
+	README:
+		- Once a counterexample is found, the next goal is its score less
+		  PRECISION, the goal the old refinement loop used. A solver that
+		  answers with near-optimal counterexamples is done in a call or two.
+		- Bisects before the first counterexample, and once a goal is not
+		  met, so the number of calls stays bounded by the range.
+*/
+
+package steering;
+
+public class CounterexampleSearch extends ThresholdSearch {
+
+	// True if the last goal was beaten
+	private boolean jump=false;
+
+	public void start(double score, int callLimit){
+		super.start(score, callLimit);
+		jump=false;
+	}
+
+	protected double chooseGoal(){
+		if(jump){
+			return high-PRECISION;
+		}
+		return (low+high)/2;
+	}
+
+	public void found(double goal, double score){
+		super.found(goal, score);
+		jump=true;
+	}
+
+	public void notFound(double goal){
+		super.notFound(goal);
+		jump=false;
+	}
+
+	public String getName(){
+		return "counterexample";
+	}
+}
@@ -0,0 +1,195 @@
+/*	DivergenceScan
+	Where each test of a suite first diverges, found in parallel before steering.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Tests of the suite scanned in parallel, on the fork-join pool.
+		- Work queue of the divergent tests, most expensive first.
+		- Scores of the divergent tests kept for steering (takeScores()).
+
+	README:
+		- For each test: its first divergence (-1 if there is none), how many
+		  steps diverge, and how many steps remain from the first divergence.
+		- Tests that never diverge are found by row hash alone (see
+		  ScoringKernel.firstDivergence). Divergent tests are scored in full,
+		  and their scores are kept until steering takes them, so no test is
+		  scored twice (one double per step of each divergent test).
+		- The estimated cost of steering a test is the steps remaining (each
+		  one is interpreted) plus the divergent steps (each one also calls
+		  the solver).
+		- getQueue() orders the divergent tests by cost, highest first, ties
+		  in suite order. Handing out the longest tests first keeps a long
+		  test from being the last to finish when several workers take from
+		  the queue. getClean() lists the tests that never diverge.
+*/
+
+package steering;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class DivergenceScan {
+
+	private GetScores scorer;
+	private TraceTable oracle;
+	private TraceTable sut;
+	private ArrayList<String> variables;
+	// Tests scanned, in suite order
+	private ArrayList<Integer> scanned=new ArrayList<Integer>();
+	// Test to {first divergence, divergent steps, steps remaining}
+	private HashMap<Integer,int[]> results=new HashMap<Integer,int[]>();
+	// Scores of each divergent test not yet taken, one per step
+	private HashMap<Integer,double[]> stepScores=new HashMap<Integer,double[]>();
+
+	public DivergenceScan(GetScores scores, TraceTable oracleTrace, TraceTable sutTrace, ArrayList<String> vars){
+		scorer=scores;
+		oracle=oracleTrace;
+		sut=sutTrace;
+		variables=vars;
+	}
+
+	// Scans a set of tests in parallel. Tests already scanned are skipped.
+	public void scan(List<Integer> tests) throws Exception{
+		ArrayList<ForkJoinTask<int[]>> scanning=new ArrayList<ForkJoinTask<int[]>>();
+		ArrayList<Integer> toScan=new ArrayList<Integer>();
+
+		for(final Integer test: tests){
+			if(this.isScanned(test) || toScan.contains(test)){
+				continue;
+			}
+			toScan.add(test);
+			scanning.add(ForkJoinPool.commonPool().submit(new Callable<int[]>(){
+				public int[] call() throws Exception{
+					return scanTest(test);
+				}
+			}));
+		}
+
+		for(int task=0;task<scanning.size();task++){
+			int[] result=scanning.get(task).join();
+			synchronized(results){
+				scanned.add(toScan.get(task));
+				results.put(toScan.get(task),result);
+			}
+		}
+	}
+
+	// First divergence, divergent steps and steps remaining of one test.
+	private int[] scanTest(int test) throws Exception{
+		int first=scorer.firstDivergence(oracle, sut, variables, test);
+		if(first==-1){
+			return new int[]{-1,0,0};
+		}
+
+		double[] scores=scorer.score(oracle, sut, variables, test);
+		int divergent=0;
+		for(int step=first;step<scores.length;step++){
+			if(scores[step]>0.0){
+				divergent++;
+			}
+		}
+		synchronized(results){
+			stepScores.put(test,scores);
+		}
+
+		return new int[]{first,divergent,Math.max(0,oracle.getRowCount(test)-first)};
+	}
+
+	private int[] resultOf(int test){
+		synchronized(results){
+			int[] result=results.get(test);
+			if(result==null){
+				throw new IllegalArgumentException("Test not scanned: "+test);
+			}
+			return result;
+		}
+	}
+
+	// Scores of a test, one per step. Those of a divergent test come from
+	// the scan, and are handed out once. Any other test is scored now.
+	public double[] takeScores(int test) throws Exception{
+		double[] scores;
+		synchronized(results){
+			scores=stepScores.remove(test);
+		}
+		if(scores==null){
+			scores=scorer.score(oracle, sut, variables, test);
+		}
+		return scores;
+	}
+
+	public boolean isScanned(int test){
+		synchronized(results){
+			return results.containsKey(test);
+		}
+	}
+
+	public boolean isDivergent(int test){
+		return this.resultOf(test)[0]!=-1;
+	}
+
+	public int getFirstDivergence(int test){
+		return this.resultOf(test)[0];
+	}
+
+	public int getDivergentSteps(int test){
+		return this.resultOf(test)[1];
+	}
+
+	public int getRemainingSteps(int test){
+		return this.resultOf(test)[2];
+	}
+
+	public long getCost(int test){
+		int[] result=this.resultOf(test);
+		return (long)result[2]+result[1];
+	}
+
+	// Divergent tests, highest estimated cost first.
+	public ArrayList<Integer> getQueue(){
+		ArrayList<Integer> queue=new ArrayList<Integer>();
+		synchronized(results){
+			for(int test: scanned){
+				if(results.get(test)[0]!=-1){
+					queue.add(test);
+				}
+			}
+		}
+
+		// Stable sort, so equal costs keep their suite order.
+		Collections.sort(queue, new Comparator<Integer>(){
+			public int compare(Integer first, Integer second){
+				return Long.compare(getCost(second), getCost(first));
+			}
+		});
+
+		return queue;
+	}
+
+	// Tests that never diverge, in suite order.
+	public ArrayList<Integer> getClean(){
+		ArrayList<Integer> clean=new ArrayList<Integer>();
+		synchronized(results){
+			for(int test: scanned){
+				if(results.get(test)[0]==-1){
+					clean.add(test);
+				}
+			}
+		}
+		return clean;
+	}
+
+	// The queue, then the tests that never diverge.
+	public ArrayList<Integer> getWorkOrder(){
+		ArrayList<Integer> order=this.getQueue();
+		order.addAll(this.getClean());
+		return order;
+	}
+}
@@ -0,0 +1,336 @@
+/*	EncodedBlock
+	Compact, read-only storage for the rows of a single test.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Cells stored as codes into a TraceDictionary shared by the whole trace.
+		- Constant columns stored as one code, slowly changing columns as runs.
+		- Codes of all columns packed into one array, as narrow as they allow.
+
+	README:
+		- Built from a decoded TraceBlock (encode). Reads give the same values
+		  as the block it was built from.
+		- Read-only. TraceTable.getWritableTest hands out an editable copy (or
+		  an overlay), so steering never writes to an encoded block.
+		- Each column is CONSTANT (one code), RUNS (run count, run starts,
+		  then a code per run) or CODES (a code per row), whichever is
+		  smallest. A column with values the dictionary has no room for is
+		  kept PLAIN, in a doubles or strings array.
+		- Tests are often short, so per-column arrays would cost more than
+		  the values they hold. Every column lives in the same few arrays,
+		  found through its offset.
+*/
+
+package steering;
+
+import java.util.Arrays;
+
+public class EncodedBlock extends TraceBlock {
+
+	// Column encodings
+	private static final byte CONSTANT=0;
+	private static final byte RUNS=1;
+	private static final byte CODES=2;
+	private static final byte PLAIN=3;
+
+	private TraceDictionary dictionary;
+	private int rows;
+	private byte[] encodings;
+	// Start of each column in the code stream (or in the plain arrays)
+	private int[] offsets;
+	// Code stream, a byte[], char[] or int[] depending on the largest entry
+	private Object stream;
+	// Plain columns
+	private double[] numbers;
+	private String[] strings;
+
+	private EncodedBlock(int[] colTypes, int rowCount, TraceDictionary dict){
+		super(colTypes,0);
+		rows=rowCount;
+		dictionary=dict;
+		encodings=new byte[colTypes.length];
+		offsets=new int[colTypes.length];
+	}
+
+	// Encodes a decoded block, adding its values to the dictionary.
+	public static EncodedBlock encode(TraceBlock block, TraceDictionary dictionary){
+		int rows=block.getRowCount();
+		EncodedBlock encoded=new EncodedBlock(block.getTypes(),rows,dictionary);
+
+		int[] entries=new int[16];
+		int size=0;
+		double[] plainNumbers=new double[0];
+		int numberCount=0;
+		String[] plainStrings=new String[0];
+		int stringCount=0;
+		int[] codes=new int[rows];
+
+		for(int col=0;col<block.getColumnCount();col++){
+			boolean text=(block.getType(col)==TraceTable.STRING);
+
+			// Codes of the column, and its runs of equal codes
+			boolean full=false;
+			int runs=0;
+			for(int row=0;row<rows && !full;row++){
+				codes[row]=text ? dictionary.codeOf(block.getString(row,col)) : dictionary.codeOf(block.getDouble(row,col));
+				full=(codes[row]==-1);
+				if(row==0 || codes[row]!=codes[row-1]){
+					runs++;
+				}
+			}
+
+			if(full){
+				encoded.encodings[col]=PLAIN;
+				if(text){
+					encoded.offsets[col]=stringCount;
+					plainStrings=grow(plainStrings,stringCount+rows);
+					for(int row=0;row<rows;row++){
+						plainStrings[stringCount++]=block.getString(row,col);
+					}
+				}else{
+					encoded.offsets[col]=numberCount;
+					plainNumbers=grow(plainNumbers,numberCount+rows);
+					for(int row=0;row<rows;row++){
+						plainNumbers[numberCount++]=block.getDouble(row,col);
+					}
+				}
+				continue;
+			}
+
+			encoded.offsets[col]=size;
+			entries=grow(entries,size+rows+1);
+			if(runs<=1){
+				encoded.encodings[col]=CONSTANT;
+				entries[size++]=(rows==0) ? 0 : codes[0];
+			}else if(2*runs+1<rows){
+				encoded.encodings[col]=RUNS;
+				entries[size++]=runs;
+				int starts=size;
+				int values=size+runs;
+				for(int row=0;row<rows;row++){
+					if(row==0 || codes[row]!=codes[row-1]){
+						entries[starts++]=row;
+						entries[values++]=codes[row];
+					}
+				}
+				size=values;
+			}else{
+				encoded.encodings[col]=CODES;
+				System.arraycopy(codes,0,entries,size,rows);
+				size+=rows;
+			}
+		}
+
+		encoded.stream=pack(entries,size);
+		if(numberCount>0){
+			encoded.numbers=Arrays.copyOf(plainNumbers,numberCount);
+		}
+		if(stringCount>0){
+			encoded.strings=Arrays.copyOf(plainStrings,stringCount);
+		}
+
+		return encoded;
+	}
+
+	private static int[] grow(int[] array, int needed){
+		if(needed<=array.length){
+			return array;
+		}
+		return Arrays.copyOf(array,Math.max(needed,array.length*2));
+	}
+
+	private static double[] grow(double[] array, int needed){
+		if(needed<=array.length){
+			return array;
+		}
+		return Arrays.copyOf(array,Math.max(needed,array.length*2));
+	}
+
+	private static String[] grow(String[] array, int needed){
+		if(needed<=array.length){
+			return array;
+		}
+		return Arrays.copyOf(array,Math.max(needed,array.length*2));
+	}
+
+	// Copies the entries into the narrowest array that holds them all.
+	private static Object pack(int[] entries, int size){
+		int largest=0;
+		for(int entry=0;entry<size;entry++){
+			largest=Math.max(largest,entries[entry]);
+		}
+
+		if(largest<=0xFF){
+			byte[] packed=new byte[size];
+			for(int entry=0;entry<size;entry++){
+				packed[entry]=(byte)entries[entry];
+			}
+			return packed;
+		}else if(largest<=0xFFFF){
+			char[] packed=new char[size];
+			for(int entry=0;entry<size;entry++){
+				packed[entry]=(char)entries[entry];
+			}
+			return packed;
+		}
+		return Arrays.copyOf(entries,size);
+	}
+
+	private int entry(int index){
+		if(stream instanceof byte[]){
+			return ((byte[])stream)[index]&0xFF;
+		}else if(stream instanceof char[]){
+			return ((char[])stream)[index];
+		}
+		return ((int[])stream)[index];
+	}
+
+	public int getRowCount(){
+		return rows;
+	}
+
+	// Dictionary code of a cell (not for PLAIN columns).
+	private int codeOf(int row, int col){
+		int offset=offsets[col];
+		switch(encodings[col]){
+		case CONSTANT:
+			return this.entry(offset);
+		case RUNS:
+			// Last run starting at or before the row
+			int runs=this.entry(offset);
+			int low=0;
+			int high=runs-1;
+			while(low<high){
+				int mid=(low+high+1)>>>1;
+				if(this.entry(offset+1+mid)<=row){
+					low=mid;
+				}else{
+					high=mid-1;
+				}
+			}
+			return this.entry(offset+1+runs+low);
+		default:
+			return this.entry(offset+row);
+		}
+	}
+
+	public double getDouble(int row, int col){
+		if(this.getType(col)==TraceTable.STRING){
+			return parseReal(this.getString(row,col));
+		}
+		if(encodings[col]==PLAIN){
+			return numbers[offsets[col]+row];
+		}
+		return dictionary.getNumber(this.codeOf(row,col));
+	}
+
+	public String getString(int row, int col){
+		if(this.getType(col)==TraceTable.STRING){
+			if(encodings[col]==PLAIN){
+				return strings[offsets[col]+row];
+			}
+			return dictionary.getString(this.codeOf(row,col));
+		}
+
+		double value=this.getDouble(row,col);
+		switch(this.getType(col)){
+		case TraceTable.BOOL:
+			return value!=0.0 ? "1" : "0";
+		case TraceTable.INT:
+			return Integer.toString((int)value);
+		default:
+			return formatReal(value);
+		}
+	}
+
+	// Decoded copy of a column.
+	public Object getColumn(int col){
+		switch(this.getType(col)){
+		case TraceTable.BOOL:
+			boolean[] bools=new boolean[rows];
+			for(int row=0;row<rows;row++){
+				bools[row]=this.getDouble(row,col)!=0.0;
+			}
+			return bools;
+		case TraceTable.INT:
+			int[] ints=new int[rows];
+			for(int row=0;row<rows;row++){
+				ints[row]=(int)this.getDouble(row,col);
+			}
+			return ints;
+		case TraceTable.REAL:
+			double[] reals=new double[rows];
+			for(int row=0;row<rows;row++){
+				reals[row]=this.getDouble(row,col);
+			}
+			return reals;
+		default:
+			String[] texts=new String[rows];
+			for(int row=0;row<rows;row++){
+				texts[row]=this.getString(row,col);
+			}
+			return texts;
+		}
+	}
+
+	// Rough number of bytes held. The dictionary is shared, and not counted.
+	public long estimateSize(){
+		long size=64+16+encodings.length+16+4L*encodings.length;
+
+		if(stream instanceof byte[]){
+			size+=16+((byte[])stream).length;
+		}else if(stream instanceof char[]){
+			size+=16+2L*((char[])stream).length;
+		}else{
+			size+=16+4L*((int[])stream).length;
+		}
+		if(numbers!=null){
+			size+=16+8L*numbers.length;
+		}
+		if(strings!=null){
+			size+=16+8L*strings.length;
+			for(String value: strings){
+				if(value!=null){
+					size+=40+value.length();
+				}
+			}
+		}
+
+		return size;
+	}
+
+	// Encoded blocks are never edited, see TraceTable.getWritableTest.
+
+	public void setRow(int row, String line){
+		throw new UnsupportedOperationException("Encoded blocks are read-only");
+	}
+
+	public void appendRow(String line){
+		throw new UnsupportedOperationException("Encoded blocks are read-only");
+	}
+
+	public void appendRow(String line, int[] fields){
+		throw new UnsupportedOperationException("Encoded blocks are read-only");
+	}
+
+	public void appendEdit(String line){
+		throw new UnsupportedOperationException("Encoded blocks are read-only");
+	}
+
+	public void setRowCount(int newSize){
+		throw new UnsupportedOperationException("Encoded blocks are read-only");
+	}
+
+	public void truncate(int newSize){
+		throw new UnsupportedOperationException("Encoded blocks are read-only");
+	}
+
+	public void setValue(int row, int col, String value){
+		throw new UnsupportedOperationException("Encoded blocks are read-only");
+	}
+
+	public void copyRow(TraceBlock from, int fromRow, int row){
+		throw new UnsupportedOperationException("Encoded blocks are read-only");
+	}
+}
@@ -2,7 +2,12 @@
 	Calculation of scores, based on several similarity metrics
 	
 	Gregory Gay (greg@greggay.com)
-	Last Updated: 06/10/2014
+	Last Updated: 10/18/2026
+		- Rows compared by hash first, only differing rows scored (firstDivergence).
+		- Single steps scored incrementally (scoreStep), only edited steps rescored.
+		- Scoring compiled into a ScoringKernel once per header, scored over primitive columns.
+		- Scores are calculated directly from TraceTable columns.
+	06/10/2014
 	 	- Change: No longer requires traces to be same # steps.
 	05/12/2014
 		- Initial file creation.
@@ -10,19 +15,53 @@
 		- Calculates Manhattan distance metric.
 
 	README:
-		- Assumes data has already been filtered to the oracle data set variables.
-		- Assumes that variables are the same in the oracle and SUT
-		- Also assumes that the first line of both traces contains a variable list.
-		- WorkerFunctions has the functionality to produce traces of the correct format.
+		- Scores the variables passed in (usually the oracle data set).
+		- Each variable must be present in both the oracle and SUT traces.
+		- scoreStep keeps the score vectors of the last few tests scored.
+		  WorkerFunctions.editTrace and removeRecords report their edits to
+		  the steerer's scorer (stepEdited, testEdited).
+		- calculate() and score() only score the rows whose hashes differ
+		  between the traces (see ScoringKernel.scoreChanged).
+		- Kernels are cached per steerer. Setting new normalization values (or
+		  a new model) compiles them again.
 */
 
 package steering;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class GetScores {
 	private SteerModel steerer;
+	// Compiled kernels, keyed on (oracle header, SUT header, variables, squared)
+	private HashMap<List<Object>,ScoringKernel> kernels = new HashMap<List<Object>,ScoringKernel>();
+	// Model types and normalization the kernels were compiled with
+	private HashMap<String,String> kernelTypes;
+	private HashMap<String,HashMap<String,Double>> kernelNorm;
+	// Score vectors of recently scored tests, keyed on (oracle, SUT, test)
+	private LinkedHashMap<List<Object>,TestScores> testScores = new LinkedHashMap<List<Object>,TestScores>(16, 0.75f, true){
+		private static final long serialVersionUID = 1L;
+		
+		protected boolean removeEldestEntry(Map.Entry<List<Object>,TestScores> eldest){
+			return size()>KEPT_TESTS;
+		}
+	};
+	
+	// Number of tests whose score vectors are kept
+	private static final int KEPT_TESTS = 16;
+	
+	// Scores of one test, with the steps edited since they were scored.
+	private static class TestScores{
+		ScoringKernel kernel;
+		double[] scores;
+		BitSet stale = new BitSet();
+	}
 	
 	public GetScores(SteerModel st){
 		steerer = st;
@@ -30,26 +69,16 @@ public class GetScores {
 	
 	
 	// Entry method, chooses the appropriate calculation based on current setting in the Steerer.
-	public ArrayList<Double> calculate(ArrayList<String> oracle, ArrayList<String> sut) throws Exception{
+	// Scores the given variables of one test, step by step.
+	public ArrayList<Double> calculate(TraceTable oracle, TraceTable sut, ArrayList<String> variables, int test) throws Exception{
 		ArrayList<Double> scores;
-		// Do some basic error checking on the size.
-		int olength = oracle.get(0).split(",").length;
-		int sutlength = sut.get(0).split(",").length;
-		if(olength != sutlength){
-			throw new SteeringDataException("Number of variables in the traces do not match: "+olength+","+sutlength);
-		}
-		/*olength = oracle.size();
-		sutlength = sut.size();
-		if(olength != sutlength){
-			throw new SteeringDataException("Number of test steps in the traces do not match: "+olength+","+sutlength);
-		}*/
 		
 		// Select appropriate method.
 		String metric = steerer.getMetric();
 		if(metric.toLowerCase().equals("manhattan")){
-			scores = calculateManhattan(oracle,sut);
+			scores = calculateManhattan(oracle,sut,variables,test);
 		}else if(metric.toLowerCase().equals("sqeuclid")){
-			scores = calculateSqEuclid(oracle,sut);
+			scores = calculateSqEuclid(oracle,sut,variables,test);
 		}else{
 			throw new SteeringException("Unsupported metric: "+metric);
 		}
@@ -58,130 +87,179 @@ public class GetScores {
 	}
 	
 	// Calculates result of the Manhattan (city block) distance metric.
-	public ArrayList<Double> calculateManhattan(ArrayList<String> oracle, ArrayList<String> sut) throws Exception{
-		ArrayList<Double> scores = new ArrayList<Double>();
-		String[] header=oracle.get(0).split(",");
+	public ArrayList<Double> calculateManhattan(TraceTable oracle, TraceTable sut, ArrayList<String> variables, int test) throws Exception{
+		return this.calculateDistance(oracle, sut, variables, test, false);
+	}
+	
+	// Calculates result of the Squared Euclidean distance metric
+	public ArrayList<Double> calculateSqEuclid(TraceTable oracle, TraceTable sut, ArrayList<String> variables, int test) throws Exception{
+		return this.calculateDistance(oracle, sut, variables, test, true);
+	}
+	
+	// Scores of one test as a primitive array, one per step.
+	public double[] score(TraceTable oracle, TraceTable sut, ArrayList<String> variables, int test) throws Exception{
+		String metric = steerer.getMetric();
+		if(metric.toLowerCase().equals("manhattan")){
+			return this.scoreDistance(oracle, sut, variables, test, false);
+		}else if(metric.toLowerCase().equals("sqeuclid")){
+			return this.scoreDistance(oracle, sut, variables, test, true);
+		}
+		throw new SteeringException("Unsupported metric: "+metric);
+	}
+	
+	// Shared by both metrics. Only the per-variable distance differs.
+	private ArrayList<Double> calculateDistance(TraceTable oracle, TraceTable sut, ArrayList<String> variables, int test, boolean squared) throws Exception{
+		double[] values = this.scoreDistance(oracle, sut, variables, test, squared);
+		ArrayList<Double> scores = new ArrayList<Double>(values.length);
+		for(double value: values){
+			scores.add(value);
+		}
+		
+		return scores;
+	}
+	
+	private double[] scoreDistance(TraceTable oracle, TraceTable sut, ArrayList<String> variables, int test, boolean squared) throws Exception{
+		ScoringKernel kernel = this.kernelFor(oracle, sut, variables, squared);
+		TraceBlock oBlock = oracle.getTest(test);
+		TraceBlock sBlock = sut.getTest(test);
+		double[] scores = new double[kernel.getStepCount(oBlock, sBlock)];
+		kernel.scoreChanged(oBlock, sBlock, scores);
 		
-		int maxRecord = Math.max(oracle.size(), sut.size());
+		return scores;
+	}
+	
+	// First step of a test where the traces diverge (score above 0), or -1.
+	// Rows are compared by hash, and scoring stops at the first divergence.
+	public int firstDivergence(TraceTable oracle, TraceTable sut, ArrayList<String> variables, int test) throws Exception{
+		ScoringKernel kernel = this.getKernel(oracle, sut, variables);
+		return kernel.firstDivergence(oracle.getTest(test), sut.getTest(test));
+	}
+	
+	// Compiled kernel for the current metric, as used by calculate().
+	public ScoringKernel getKernel(TraceTable oracle, TraceTable sut, ArrayList<String> variables) throws Exception{
+		String metric = steerer.getMetric().toLowerCase();
+		if(!metric.equals("manhattan") && !metric.equals("sqeuclid")){
+			throw new SteeringException("Unsupported metric: "+metric);
+		}
+		return this.kernelFor(oracle, sut, variables, metric.equals("sqeuclid"));
+	}
+	
+	// Returns the kernel for a pair of traces and variable list, compiling it
+	// on first use. Kernels are dropped if the model or normalization change.
+	private ScoringKernel kernelFor(TraceTable oracle, TraceTable sut, ArrayList<String> variables, boolean squared) throws Exception{
+		HashMap<String,String> typeMap = steerer.getModel().getTypeMap();
+		HashMap<String,HashMap<String,Double>> normVals = steerer.getNormalization();
+		List<Object> key = Arrays.asList((Object)oracle.getHeaderLine(), sut.getHeaderLine(), variables, squared);
 		
-		for(int record = 1; record< maxRecord; record++){
-			String[] oRecord = null;
-			String[] sRecord = null;
-			
-			if(record<oracle.size()){
-				oRecord = oracle.get(record).split(",");
+		synchronized(kernels){
+			if(kernelTypes!=typeMap || kernelNorm!=normVals){
+				kernels.clear();
+				kernelTypes = typeMap;
+				kernelNorm = normVals;
 			}
-			if(record<sut.size()){
-				sRecord = sut.get(record).split(",");
-			}
-			
-			double score = 0;
 			
-			if(oRecord==null || sRecord==null){
-				scores.add(10000.0);
-			}else{
-				for(int var = 0; var<oRecord.length; var++){
-					String variable = header[var];
-					String type = steerer.getModel().getTypeMap().get(variable);
-
-					if(oRecord[var].toLowerCase()=="nan"){
-						oRecord[var]="0";
-					}else if(sRecord[var].toLowerCase()=="nan"){
-						sRecord[var]="0";
-					}
-
-					double oVal = Double.parseDouble(oRecord[var]);
-					double sVal = Double.parseDouble(sRecord[var]);
-
+			ScoringKernel kernel = kernels.get(key);
+			if(kernel==null){
+				int[] flags = new int[variables.size()];
+				double[] offset = new double[variables.size()];
+				double[] scale = new double[variables.size()];
+				
+				for(int var = 0; var<variables.size(); var++){
+					String variable = variables.get(var);
+					flags[var] = typeMap.get(variable).equals("bool") ? ScoringKernel.BOOL : ScoringKernel.NUMERIC;
+					offset[var] = 0.0;
+					scale[var] = 1.0;
+					
 					// Normalize if imported.
-					HashMap<String,HashMap<String,Double>> normVals = steerer.getNormalization();	
-					if(normVals!=null){
-						if(!type.equals("bool")){
-							double minV = normVals.get(variable).get("min");
-							double maxV = normVals.get(variable).get("max");
-							oVal = (oVal-minV)/(maxV-minV);
-							sVal = (sVal-minV)/(maxV-minV);
-						}
-					}
-
-					if(!type.equals("bool")){
-						score+=Math.abs(oVal-sVal);
-					}else{
-						if(oVal!=sVal){
-							score+=1;
-						}
+					if(normVals!=null && flags[var]!=ScoringKernel.BOOL){
+						offset[var] = normVals.get(variable).get("min");
+						scale[var] = normVals.get(variable).get("max")-offset[var];
 					}
 				}
-
-				scores.add(score);
+				
+				kernel = new ScoringKernel(this.columnsFor(oracle, variables), this.columnsFor(sut, variables), flags, offset, scale, squared);
+				// Copy the list, so later changes to it cannot corrupt the key.
+				kernels.put(Arrays.asList((Object)oracle.getHeaderLine(), sut.getHeaderLine(), new ArrayList<String>(variables), squared), kernel);
 			}
+			
+			return kernel;
 		}
-				
-		return scores;
 	}
 	
-	// Calculates result of the Squared Euclidean distance metric
-	public ArrayList<Double> calculateSqEuclid(ArrayList<String> oracle, ArrayList<String> sut) throws Exception{
-		ArrayList<Double> scores = new ArrayList<Double>();
-		String[] header=oracle.get(0).split(",");
-
-		int maxRecord = Math.max(oracle.size(), sut.size());
-
-		for(int record = 1; record< maxRecord; record++){
-			String[] oRecord = null;
-			String[] sRecord = null;
-
-			if(record<oracle.size()){
-				oRecord = oracle.get(record).split(",");
+	// Score of one step of a test of the steered trace, against the SUT.
+	public double scoreStep(int test, int step) throws Exception{
+		return this.scoreStep(steerer.getSteeredTrace(), steerer.getSutTrace(), steerer.getOracleData(), test, step);
+	}
+	
+	// Score of one step of a test. The scores of the test are kept, and only
+	// the steps edited since (see stepEdited) are scored again.
+	public double scoreStep(TraceTable oracle, TraceTable sut, ArrayList<String> variables, int test, int step) throws Exception{
+		ScoringKernel kernel = this.getKernel(oracle, sut, variables);
+		TraceBlock oBlock = oracle.getTest(test);
+		TraceBlock sBlock = sut.getTest(test);
+		List<Object> key = Arrays.asList((Object)oracle, sut, test);
+		
+		synchronized(testScores){
+			TestScores cached = testScores.get(key);
+			// Rescore the whole test if it is new, or changed length.
+			if(cached==null || cached.kernel!=kernel || cached.scores.length!=kernel.getStepCount(oBlock, sBlock)){
+				cached = new TestScores();
+				cached.kernel = kernel;
+				cached.scores = new double[kernel.getStepCount(oBlock, sBlock)];
+				kernel.score(oBlock, sBlock, cached.scores);
+				testScores.put(key, cached);
 			}
-			if(record<sut.size()){
-				sRecord = sut.get(record).split(",");
+			
+			if(step<0 || step>=cached.scores.length){
+				throw new IndexOutOfBoundsException("Index: "+step+", Size: "+cached.scores.length);
 			}
-
-			double score = 0;
-
-			if(oRecord==null || sRecord==null){
-				scores.add(10000.0);
-			}else{
-				for(int var = 0; var< oRecord.length; var++){
-					String variable = header[var];
-					String type = steerer.getModel().getTypeMap().get(variable);
-
-					if(oRecord[var].toLowerCase()=="nan"){
-						oRecord[var]="0";
-					}else if(sRecord[var].toLowerCase()=="nan"){
-						sRecord[var]="0";
-					}
-
-					double oVal = Double.parseDouble(oRecord[var]);
-					double sVal = Double.parseDouble(sRecord[var]);
-
-					// Normalize if imported.
-					HashMap<String,HashMap<String,Double>> normVals = steerer.getNormalization();	
-					if(normVals!=null){
-						if(!type.equals("bool")){
-							double minV = normVals.get(variable).get("min");
-							double maxV = normVals.get(variable).get("max");
-							oVal = (oVal-minV)/(maxV-minV);
-							sVal = (sVal-minV)/(maxV-minV);
-						}
-					}
-
-					if(!type.equals("bool")){
-						double dist = oVal - sVal;
-						score+=(dist*dist);
-					}else{
-						if(oVal!=sVal){
-							score+=1;
-						}
-					}
+			if(cached.stale.get(step)){
+				cached.scores[step] = kernel.scoreRow(oBlock, sBlock, step);
+				cached.stale.clear(step);
+			}
+			
+			return cached.scores[step];
+		}
+	}
+	
+	// Marks an edited step of a test for rescoring, in every kept score
+	// vector the trace is part of.
+	public void stepEdited(TraceTable trace, int test, int step){
+		synchronized(testScores){
+			for(Map.Entry<List<Object>,TestScores> entry: testScores.entrySet()){
+				List<Object> key = entry.getKey();
+				if((key.get(0)==trace || key.get(1)==trace) && key.get(2).equals(test)){
+					entry.getValue().stale.set(step);
 				}
-
-				scores.add(score);
 			}
 		}
-
-		return scores;
+	}
+	
+	// Drops the kept scores of a test (e.g., after it is truncated).
+	public void testEdited(TraceTable trace, int test){
+		synchronized(testScores){
+			Iterator<List<Object>> keys = testScores.keySet().iterator();
+			while(keys.hasNext()){
+				List<Object> key = keys.next();
+				if((key.get(0)==trace || key.get(1)==trace) && key.get(2).equals(test)){
+					keys.remove();
+				}
+			}
+		}
+	}
+	
+	// Finds the columns of the chosen variables in a trace.
+	private int[] columnsFor(TraceTable trace, ArrayList<String> variables) throws Exception{
+		int[] cols = new int[variables.size()];
+		
+		for(int var = 0; var<cols.length; var++){
+			cols[var] = trace.getColumnIndex(variables.get(var));
+			if(cols[var]==-1){
+				throw new SteeringDataException("Invalid element requested: "+variables.get(var));
+			}
+		}
+		
+		return cols;
 	}
 	
 	public void setSteerer(SteerModel st){
@@ -0,0 +1,29 @@
+/*	GoldenSectionSearch
+	Threshold search splitting the range at the golden section.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+
+	README:
+		- Goals sit 0.382 of the way up from the lower bound. A counterexample
+		  cuts the range to 0.382 of its size, no answer to 0.618, so this
+		  gains on bisection when counterexamples are usually found, as when
+		  the step can be steered close to 0.
+*/
+
+package steering;
+
+public class GoldenSectionSearch extends ThresholdSearch {
+
+	// 1 - 1/phi
+	private static final double SECTION=(3.0-Math.sqrt(5.0))/2.0;
+
+	protected double chooseGoal(){
+		return low+SECTION*(high-low);
+	}
+
+	public String getName(){
+		return "golden";
+	}
+}
@@ -2,7 +2,14 @@
 	Modifies Lustre programs in order to steer with jKind.
 
 	Gregory Gay (greg@greggay.com)
-	Last Updated: 05/14/2014 
+	Last Updated: 10/18/2026
+		- Concrete values and casts written with StepValues.realLiteral(), no exponents.
+		- Goals written as plain decimals in every injection, not just updateGoal(),
+		  whatever the default locale.
+		- updateGoals() emits a ladder of goal properties (prop, prop_1, ...) for one jKind run.
+		- Takes trace records as any List (such as a TraceRecords view).
+		- Values read once per step as typed StepValues, no re-parsing.
+	05/14/2014 
 		- Injection for Manhattan/SqEuclid metrics.
 		- Bug fixes.
 	05/13/2014
@@ -16,12 +23,19 @@ package steering;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 
 public class LustreInjection {
 
 	private SteerModel steerer;
 	private LustreModel injectedModel;
 	private String currentGoal;
+	// Extra goal properties of the current ladder (prop_1, prop_2, ...), and
+	// their declarations and equations as written in the model
+	private ArrayList<String> rungs=new ArrayList<String>();
+	private String rungDecls="";
+	private String rungExprs="";
 	
 	public LustreInjection(SteerModel st) {
 		steerer = st;
@@ -52,28 +66,32 @@ public class LustreInjection {
 	}
 	
 	// Entry method, chooses the appropriate injection based on current metric in the Steerer.
-	public String inject(ArrayList<String> oracleTrace, ArrayList<String> sutTrace, ArrayList<String> initTrace, double threshold) throws Exception{
+	public String inject(List<String> oracleTrace, List<String> sutTrace, List<String> initTrace, double threshold) throws Exception{
 		injectedModel = new LustreModel(steerer.getModel().getName(), new HashMap<String,String>(steerer.getModel().getTypeMap()), 
 				new ArrayList<String>(steerer.getModel().getInputVariables()), new ArrayList<String>(steerer.getModel().getOutputVariables()), 
 				new ArrayList<String>(steerer.getModel().getInternalVariables()), new ArrayList<String>(steerer.getModel().getExpressionList()));
 
+		rungs=new ArrayList<String>();
+		rungDecls="";
+		rungExprs="";
+		
 		// Pass over traces and check for ill-formated values.
-		initTrace=this.valuePass(initTrace);
-		oracleTrace=this.valuePass(oracleTrace);
-		sutTrace=this.valuePass(sutTrace);
+		StepValues initValues=this.valuePass(initTrace);
+		StepValues oracleValues=this.valuePass(oracleTrace);
+		StepValues sutValues=this.valuePass(sutTrace);
 		
 		// If not the first test step, set the initial state.
-		if(initTrace!=null){
-			this.setInitialState(initTrace);
+		if(initValues!=null){
+			this.setInitialState(initValues);
 			//injectedModel.printToFile("temp.lus");
 		}
 		
 		// Select appropriate method.
 		String metric = steerer.getMetric();
 		if(metric.toLowerCase().equals("manhattan")){
-			this.injectManhattan(oracleTrace, sutTrace, threshold);
+			this.injectManhattan(oracleValues, sutValues, threshold);
 		}else if(metric.toLowerCase().equals("sqeuclid")){
-			this.injectSqEuclid(oracleTrace, sutTrace, threshold);
+			this.injectSqEuclid(oracleValues, sutValues, threshold);
 		}else{
 			throw new SteeringException("Unsupported metric: "+metric);
 		}
@@ -91,14 +109,7 @@ public class LustreInjection {
 			exp = exprs.get(count);
 			
 			if(exp.contains("\tprop = ")){
-				String prop="(score_steered ";
-				if(threshold<0.0){
-					prop=prop+"< score_original)";
-				}else if(threshold==0.0){
-					prop=prop+"= 0.0)";
-				}else{
-					prop=prop+"< "+String.format("%.12f", threshold)+")";
-				}
+				String prop=this.goalOf(threshold);
 				newe=exp.replace(currentGoal, prop);
 				currentGoal=prop;
 				exprs.set(count,newe);
@@ -113,15 +124,88 @@ public class LustreInjection {
 		return injectedModel.toString();
 	}
 	
+	// Goal comparison on score_steered. Thresholds are written as plain
+	// decimals, jKind does not read exponents (5.0E-4).
+	private String goalOf(double threshold){
+		String prop="(score_steered ";
+		if(threshold<0.0){
+			prop=prop+"< score_original)";
+		}else if(threshold==0.0){
+			prop=prop+"= 0.0)";
+		}else{
+			prop=prop+"< "+String.format(Locale.ROOT, "%.12f", threshold)+")";
+		}
+		return prop;
+	}
+	
+	// Sets a ladder of goals, all checked in one jKind run: prop for the first
+	// threshold, and prop_1, prop_2, ... (copies of prop) for the others.
+	// Replaces the previous ladder, with the same cheap rebuild as updateGoal().
+	public String updateGoals(double[] thresholds){
+		this.updateGoal(thresholds[0]);
+		
+		ArrayList<String> exprs = injectedModel.getExpressionList();
+		ArrayList<String> iVars = injectedModel.getInternalVariables();
+		HashMap<String,String> types = injectedModel.getTypeMap();
+		HashMap<String,String> parts = injectedModel.getBuiltParts();
+		
+		// Drop the previous ladder, always the last variables and equations.
+		for(int rung=1;rung<=rungs.size();rung++){
+			iVars.remove("prop_"+rung);
+			types.remove("prop_"+rung);
+		}
+		exprs.removeAll(rungs);
+		if(parts.containsKey("internalVariables") && parts.get("internalVariables").endsWith(rungDecls)){
+			String iV=parts.get("internalVariables");
+			parts.put("internalVariables", iV.substring(0,iV.length()-rungDecls.length()));
+		}
+		if(parts.containsKey("expressionList") && parts.get("expressionList").endsWith(rungExprs)){
+			String eL=parts.get("expressionList");
+			parts.put("expressionList", eL.substring(0,eL.length()-rungExprs.length()));
+		}
+		rungs.clear();
+		rungDecls="";
+		rungExprs="";
+		
+		String propExp="";
+		for(int count=exprs.size()-1;count>=0;count--){
+			if(exprs.get(count).contains("\tprop = ")){
+				propExp=exprs.get(count);
+				break;
+			}
+		}
+		
+		for(int rung=1;rung<thresholds.length;rung++){
+			String name="prop_"+rung;
+			String rungExp=propExp.replace("\tprop = ","\t"+name+" = ").replace("--%PROPERTY prop;","--%PROPERTY "+name+";").replace(currentGoal, this.goalOf(thresholds[rung]));
+			exprs.add(rungExp);
+			iVars.add(name);
+			types.put(name,"bool");
+			rungs.add(rungExp);
+			rungDecls=rungDecls+"\t"+name+" : bool;\n";
+			rungExprs=rungExprs+"\t"+rungExp;
+		}
+		
+		if(parts.containsKey("internalVariables")){
+			parts.put("internalVariables", parts.get("internalVariables")+rungDecls);
+		}
+		if(parts.containsKey("expressionList")){
+			parts.put("expressionList", parts.get("expressionList")+rungExprs);
+		}
+		injectedModel.setTypeMap(types);
+		injectedModel.setInternalVariables(iVars);
+		injectedModel.setExpressionList(exprs);
+		injectedModel.setBuiltParts(parts);
+		
+		return injectedModel.toString();
+	}
+	
 	// Inject equations to calculate the dissimilarity score, 
 	// Based on the Manhattan/City Block distance
-	public void injectManhattan(ArrayList<String> oracleTrace, ArrayList<String> sutTrace, double threshold) throws Exception{		
+	public void injectManhattan(StepValues oValues, StepValues sValues, double threshold) throws Exception{		
 		ArrayList<String> iVars=injectedModel.getInternalVariables();
 		ArrayList<String> exprs=injectedModel.getExpressionList();
 		HashMap<String,String> types=injectedModel.getTypeMap();
-		ArrayList<String> header=new ArrayList<String>(Arrays.asList(oracleTrace.get(0).split(",")));
-		ArrayList<String> oValues=new ArrayList<String>(Arrays.asList(oracleTrace.get(1).split(",")));
-		ArrayList<String> sValues=new ArrayList<String>(Arrays.asList(sutTrace.get(1).split(",")));
 		
 		String scoreSteered="\tscore_steered = ";
 		String scoreOriginal="\tscore_original = ";
@@ -139,25 +223,22 @@ public class LustreInjection {
 		types.put("prop","bool");
 		
 		String type="";
-		String ovalue="";
-		String svalue="";
+		double ovalue;
+		double svalue;
 		double minValue;
 		double maxValue;
 		
 		for(String input: injectedModel.getInputVariables()){
 			if(!steerer.getOracleData().contains(input)){
 				type=types.get(input);
-				ovalue=oValues.get(header.indexOf(input));
-				
 				if(!type.equals("bool")){
-					ovalue=ovalue.replaceAll("[^\\d.]", "");
 					iVars.add("concrete_oracle_"+input);
 					types.put("concrete_oracle_"+input,"real");
-					exprs.add("\tconcrete_oracle_"+input+" = "+Double.toString(Double.parseDouble(ovalue))+";\n");
+					exprs.add("\tconcrete_oracle_"+input+" = "+StepValues.realLiteral(oValues.getValue(input))+";\n");
 				}else{
 					iVars.add("concrete_oracle_"+input);
 					types.put("concrete_oracle_"+input,"bool");
-					exprs.add("\tconcrete_oracle_"+input+" = "+ovalue+";\n");
+					exprs.add("\tconcrete_oracle_"+input+" = "+oValues.getLiteral(input)+";\n");
 				}
 			}
 		}
@@ -203,21 +284,18 @@ public class LustreInjection {
 			types.put("score_new_"+output, "real");
 			types.put("score_original_"+output, "real");
 			
-			ovalue=oValues.get(header.indexOf(output));
-			svalue=sValues.get(header.indexOf(output));
+			ovalue=oValues.getValue(output);
+			svalue=sValues.getValue(output);
 						
 			if(!type.equals("bool")){
-				ovalue=ovalue.replaceAll("[^\\d.]", "");
-				svalue=svalue.replaceAll("[^\\d.]", "");
-				
 				if(normConstants==null){
-					exprs.add("\tconcrete_sut_"+output+" = "+Double.toString(Double.parseDouble(svalue))+";\n");
-					exprs.add("\tconcrete_oracle_"+output+" = "+Double.toString(Double.parseDouble(ovalue))+";\n");
+					exprs.add("\tconcrete_sut_"+output+" = "+StepValues.realLiteral(svalue)+";\n");
+					exprs.add("\tconcrete_oracle_"+output+" = "+StepValues.realLiteral(ovalue)+";\n");
 				}else{
 					minValue=normConstants.get(output).get("min");
 					maxValue=normConstants.get(output).get("max");
-					double covalue=Double.parseDouble(ovalue);
-					double csvalue=Double.parseDouble(svalue);
+					double covalue=ovalue;
+					double csvalue=svalue;
 					
 					minValue=Math.min(minValue, Math.min(csvalue,covalue));
 					maxValue=Math.max(maxValue, Math.max(csvalue,covalue));
@@ -236,8 +314,8 @@ public class LustreInjection {
 				exprs.add("\tscore_new_"+output+" = if (concrete_sut_"+output+" > "+refer+") then (concrete_sut_"+output+" - "+refer+") else ("+refer+" - concrete_sut_"+output+");\n");
 				exprs.add("\tscore_original_"+output+" = if (concrete_sut_"+output+" > concrete_oracle_"+output+") then (concrete_sut_"+output+" - concrete_oracle_"+output+") else (concrete_oracle_"+output+" - concrete_sut_"+output+");\n");
 			}else{
-				exprs.add("\tconcrete_sut_"+output+" = "+svalue+";\n");
-				exprs.add("\tconcrete_oracle_"+output+" = "+ovalue+";\n");
+				exprs.add("\tconcrete_sut_"+output+" = "+sValues.getLiteral(output)+";\n");
+				exprs.add("\tconcrete_oracle_"+output+" = "+oValues.getLiteral(output)+";\n");
 				// (2) Specific to Manhattan/SqEuclid
 				exprs.add("\tscore_new_"+output+" = if ((concrete_sut_"+output+" and "+output+") or ((not concrete_sut_"+output+") and (not "+output+"))) then 0.0 else 1.0;\n");
 				exprs.add("\tscore_original_"+output+" = if ((concrete_sut_"+output+" and concrete_oracle_"+output+") or ((not concrete_sut_"+output+") and (not concrete_oracle_"+output+"))) then 0.0 else 1.0;\n");
@@ -255,14 +333,7 @@ public class LustreInjection {
 		
 		// Formulate property
 		
-		String prop="(score_steered ";
-		if(threshold<0.0){
-			prop=prop+"< score_original)";
-		}else if(threshold==0.0){
-			prop=prop+"= 0.0)";
-		}else{
-			prop=prop+"< "+threshold+")";
-		}
+		String prop=this.goalOf(threshold);
 		currentGoal=prop;
 		
 		String wholeProp="";
@@ -294,13 +365,10 @@ public class LustreInjection {
 	
 	// Inject calculations to perform dissimilarity check.
 	// Specific to Squared Euclidean distance.
-	public void injectSqEuclid(ArrayList<String> oracleTrace, ArrayList<String> sutTrace, double threshold) throws Exception{
+	public void injectSqEuclid(StepValues oValues, StepValues sValues, double threshold) throws Exception{
 		ArrayList<String> iVars=injectedModel.getInternalVariables();
 		ArrayList<String> exprs=injectedModel.getExpressionList();
 		HashMap<String,String> types=injectedModel.getTypeMap();
-		ArrayList<String> header=new ArrayList<String>(Arrays.asList(oracleTrace.get(0).split(",")));
-		ArrayList<String> oValues=new ArrayList<String>(Arrays.asList(oracleTrace.get(1).split(",")));
-		ArrayList<String> sValues=new ArrayList<String>(Arrays.asList(sutTrace.get(1).split(",")));
 		
 		String scoreSteered="\tscore_steered = ";
 		String scoreOriginal="\tscore_original = ";
@@ -318,26 +386,22 @@ public class LustreInjection {
 		types.put("prop","bool");
 		
 		String type="";
-		String ovalue="";
-		String svalue="";
+		double ovalue;
+		double svalue;
 		double minValue;
 		double maxValue;
 		
 		for(String input: injectedModel.getInputVariables()){
 			if(!steerer.getOracleData().contains(input)){
 				type=types.get(input);
-				ovalue=oValues.get(header.indexOf(input));
-				
 				if(!type.equals("bool")){
-					ovalue=ovalue.replaceAll("[^\\d.]", "");
-					
 					iVars.add("concrete_oracle_"+input);
 					types.put("concrete_oracle_"+input,"real");
-					exprs.add("\tconcrete_oracle_"+input+" = "+Double.toString(Double.parseDouble(ovalue))+";\n");
+					exprs.add("\tconcrete_oracle_"+input+" = "+StepValues.realLiteral(oValues.getValue(input))+";\n");
 				}else{
 					iVars.add("concrete_oracle_"+input);
 					types.put("concrete_oracle_"+input,"bool");
-					exprs.add("\tconcrete_oracle_"+input+" = "+ovalue+";\n");
+					exprs.add("\tconcrete_oracle_"+input+" = "+oValues.getLiteral(input)+";\n");
 				}
 			}
 		}
@@ -383,21 +447,18 @@ public class LustreInjection {
 			types.put("score_new_"+output, "real");
 			types.put("score_original_"+output, "real");
 			
-			ovalue=oValues.get(header.indexOf(output));
-			svalue=sValues.get(header.indexOf(output));
+			ovalue=oValues.getValue(output);
+			svalue=sValues.getValue(output);
 						
 			if(!type.equals("bool")){
-				ovalue=ovalue.replaceAll("[^\\d.]", "");
-				svalue=svalue.replaceAll("[^\\d.]", "");
-				
 				if(normConstants==null){
-					exprs.add("\tconcrete_sut_"+output+" = "+Double.toString(Double.parseDouble(svalue))+";\n");
-					exprs.add("\tconcrete_oracle_"+output+" = "+Double.toString(Double.parseDouble(ovalue))+";\n");
+					exprs.add("\tconcrete_sut_"+output+" = "+StepValues.realLiteral(svalue)+";\n");
+					exprs.add("\tconcrete_oracle_"+output+" = "+StepValues.realLiteral(ovalue)+";\n");
 				}else{
 					minValue=normConstants.get(output).get("min");
 					maxValue=normConstants.get(output).get("max");
-					double covalue=Double.parseDouble(ovalue);
-					double csvalue=Double.parseDouble(svalue);
+					double covalue=ovalue;
+					double csvalue=svalue;
 					
 					minValue=Math.min(minValue, Math.min(csvalue,covalue));
 					maxValue=Math.max(maxValue, Math.max(csvalue,covalue));
@@ -416,8 +477,8 @@ public class LustreInjection {
 				exprs.add("\tscore_new_"+output+" = if (concrete_sut_"+output+" > "+refer+") then (concrete_sut_"+output+" - "+refer+") else ("+refer+" - concrete_sut_"+output+");\n");
 				exprs.add("\tscore_original_"+output+" = if (concrete_sut_"+output+" > concrete_oracle_"+output+") then (concrete_sut_"+output+" - concrete_oracle_"+output+") else (concrete_oracle_"+output+" - concrete_sut_"+output+");\n");
 			}else{
-				exprs.add("\tconcrete_sut_"+output+" = "+svalue+";\n");
-				exprs.add("\tconcrete_oracle_"+output+" = "+ovalue+";\n");
+				exprs.add("\tconcrete_sut_"+output+" = "+sValues.getLiteral(output)+";\n");
+				exprs.add("\tconcrete_oracle_"+output+" = "+oValues.getLiteral(output)+";\n");
 				// (2) Specific to Manhattan/SqEuclid
 				exprs.add("\tscore_new_"+output+" = if ((concrete_sut_"+output+" and "+output+") or ((not concrete_sut_"+output+") and (not "+output+"))) then 0.0 else 1.0;\n");
 				exprs.add("\tscore_original_"+output+" = if ((concrete_sut_"+output+" and concrete_oracle_"+output+") or ((not concrete_sut_"+output+") and (not concrete_oracle_"+output+"))) then 0.0 else 1.0;\n");
@@ -435,14 +496,7 @@ public class LustreInjection {
 		
 		// Formulate property
 		
-		String prop="(score_steered ";
-		if(threshold<0.0){
-			prop=prop+"< score_original)";
-		}else if(threshold==0.0){
-			prop=prop+"= 0.0)";
-		}else{
-			prop=prop+"< "+threshold+")";
-		}
+		String prop=this.goalOf(threshold);
 		currentGoal=prop;
 		
 		String wholeProp="";
@@ -473,52 +527,16 @@ public class LustreInjection {
 	}
 	
 	// Takes a pass over values and makes sure there isn't anything wrong.
-	public ArrayList<String> valuePass(ArrayList<String> trace){
-		ArrayList<String> header=new ArrayList<String>(Arrays.asList(trace.get(0).split(",")));
-		ArrayList<String> values=new ArrayList<String>(Arrays.asList(trace.get(1).split(",")));
-		String variable="";
-		String value="";
-		String newValues="";
-		
-		// Pass over values, make sure they look correct.
-		for(int count=0;count<header.size();count++){
-			while(!injectedModel.getTypeMap().containsKey(header.get(count))){
-				count++;
-			}
-			if(count>=header.size()){
-				break;
-			}
-			
-			variable=header.get(count);
-			value=values.get(count);
-			
-			if(value.toLowerCase().equals("nan")){
-				value="0";
-			}
-			
-			if(injectedModel.getTypeMap().get(variable).equals("bool")){
-				if(value.equals("1")){
-					value="true";
-				}else{
-					value="false";
-				}
-			}else if(injectedModel.getTypeMap().get(variable).equals("real")){
-				value=value.replaceAll("[^\\d.]", "");
-				value=Double.toString(Double.parseDouble(value));
-			}
-			
-			newValues=newValues+value+",";
+	// Values are read as the model types them: NaN as 0, bools as true/false.
+	public StepValues valuePass(List<String> trace){
+		if(trace==null){
+			return null;
 		}
-		
-		trace.set(1,newValues.substring(0,newValues.length()-1));
-		
-		return trace;
+		return new StepValues(trace,1,injectedModel.getTypeMap());
 	}
 	
 	// Sets the initial state.
-	public void setInitialState(ArrayList<String> initTrace){
-		ArrayList<String> header=new ArrayList<String>(Arrays.asList(initTrace.get(0).split(",")));
-		ArrayList<String> values=new ArrayList<String>(Arrays.asList(initTrace.get(1).split(",")));
+	public void setInitialState(StepValues values){
 		
 		// Modify expressions.
 		ArrayList<String> exprs = injectedModel.getExpressionList();
@@ -618,14 +636,12 @@ public class LustreInjection {
 						
 						String replaced= words.get(word).replace("(","").replace(")","").replace(";","");
 						
-						if(start==1 && (ocount>=0 || lastWord) && (header.contains(replaced))){
-							int where = header.indexOf(replaced);
-							replaced=values.get(where);
-							
+						if(start==1 && (ocount>=0 || lastWord) && (values.contains(replaced))){
 							if(cast){
-								replaced=replaced.replaceAll("[^\\d.]", "");
-								replaced=Double.toString(Double.parseDouble(replaced));
+								replaced=StepValues.realLiteral(values.getValue(replaced));
 								howManyC--;
+							}else{
+								replaced=values.getLiteral(replaced);
 							}
 							
 							int count;
@@ -690,14 +706,12 @@ public class LustreInjection {
 					
 					String replaced= words.get(word).replace("(","").replace(")","").replace(";","");
 					
-					if((ocount>=0 || lastWord) && (header.contains(replaced))){
-						int where = header.indexOf(replaced);
-						replaced=values.get(where);
-						
+					if((ocount>=0 || lastWord) && (values.contains(replaced))){
 						if(cast){
-							replaced=replaced.replaceAll("[^\\d.]", "");
-							replaced=Double.toString(Double.parseDouble(replaced));
+							replaced=StepValues.realLiteral(values.getValue(replaced));
 							howManyC--;
+						}else{
+							replaced=values.getLiteral(replaced);
 						}
 						
 						int count;
@@ -0,0 +1,328 @@
+/*	MappedTraceReader
+	Memory-mapped, test-indexed access to a trace file.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- One scan of the mapped file to find the blank-line test boundaries.
+		- Reads the rows of a single test on request.
+		- Boundaries kept in a TraceIndex, which can be reused between runs.
+		- Index built in parallel, split at blank lines, on the fork-join pool.
+		- Only the columns asked for are decoded.
+
+	README:
+		- Offsets point at the first data row of a test (after any repeated header)
+		  and at the blank line (or end of file) that closes it.
+		- Safe to read tests from several threads at once.
+		- Files larger than 2GB are mapped in several segments.
+*/
+
+package steering;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.CRC32;
+
+public class MappedTraceReader implements TraceSource {
+
+	// Size of each mapped segment
+	private static final int SEGMENT_BITS=30;
+	private static final long SEGMENT_SIZE=1L<<SEGMENT_BITS;
+	// Bytes scanned by a single task when indexing
+	private static final long SCAN_CHUNK=1L<<22;
+
+	private String filename;
+	private long length;
+	private MappedByteBuffer[] segments;
+	// Byte range and number of rows of each test
+	private TraceIndex index;
+
+	// Maps the file. An index must be built or set before tests can be read.
+	public MappedTraceReader(String file) throws IOException{
+		filename=file;
+		this.map();
+	}
+
+	public MappedTraceReader(String file, boolean isOffset) throws IOException{
+		this(file);
+		index=this.buildIndex(isOffset);
+	}
+
+	// Maps the whole file, one segment at a time.
+	private void map() throws IOException{
+		RandomAccessFile raf=new RandomAccessFile(filename,"r");
+
+		try{
+			FileChannel channel=raf.getChannel();
+			length=channel.size();
+			int count=(int)((length+SEGMENT_SIZE-1)>>>SEGMENT_BITS);
+			segments=new MappedByteBuffer[count];
+
+			for(int segment=0;segment<count;segment++){
+				long start=(long)segment<<SEGMENT_BITS;
+				segments[segment]=channel.map(FileChannel.MapMode.READ_ONLY,start,Math.min(SEGMENT_SIZE,length-start));
+			}
+		}finally{
+			raf.close();
+		}
+	}
+
+	// Finds where each test starts and ends. The blank lines between tests are
+	// located in parallel, over chunks of the file, then the rows of each test
+	// are counted in parallel. The checksum is calculated alongside.
+	// Mirrors the old line-by-line reader: the first line is the header, and
+	// if isOffset is set every test repeats it on its first line.
+	public TraceIndex buildIndex(boolean isOffset){
+		ForkJoinPool pool=ForkJoinPool.commonPool();
+		ForkJoinTask<Long> crc=pool.submit(new Callable<Long>(){
+			public Long call(){
+				return checksum();
+			}
+		});
+
+		long[] blanks=pool.invoke(new BlankLineScan(0,length));
+		int tests=0;
+		if(length>0){
+			tests=blanks.length+1;
+		}
+
+		long[] testStarts=new long[tests];
+		long[] testEnds=new long[tests];
+		long start=0;
+		for(int test=0;test<tests;test++){
+			testStarts[test]=start;
+			if(test<blanks.length){
+				testEnds[test]=blanks[test];
+				start=this.nextLine(blanks[test]);
+			}else{
+				testEnds[test]=length;
+			}
+
+			// Skip the header line
+			if(test==0 || isOffset){
+				testStarts[test]=Math.min(this.nextLine(testStarts[test]),testEnds[test]);
+			}
+		}
+
+		String header="";
+		if(length>0){
+			header=this.decodeLine(0,this.nextLine(0)-1);
+		}
+
+		int[] rowCounts=new int[tests];
+		pool.invoke(new RowCount(testStarts,testEnds,rowCounts,0,tests));
+
+		return new TraceIndex(isOffset,length,new File(filename).lastModified(),crc.join(),header,testStarts,testEnds,rowCounts);
+	}
+
+	// Position just after the end of the line containing pos.
+	private long nextLine(long pos){
+		while(pos<length && this.byteAt(pos)!='\n'){
+			pos++;
+		}
+		return Math.min(pos+1,length);
+	}
+
+	// Locates blank lines in a range of the file, splitting large ranges.
+	private class BlankLineScan extends RecursiveTask<long[]>{
+		private static final long serialVersionUID = 1L;
+		private long from;
+		private long to;
+
+		BlankLineScan(long start, long end){
+			from=start;
+			to=end;
+		}
+
+		protected long[] compute(){
+			if(to-from>SCAN_CHUNK){
+				long middle=from+(to-from)/2;
+				BlankLineScan left=new BlankLineScan(from,middle);
+				BlankLineScan right=new BlankLineScan(middle,to);
+				left.fork();
+				long[] after=right.compute();
+				long[] before=left.join();
+				long[] both=Arrays.copyOf(before,before.length+after.length);
+				System.arraycopy(after,0,both,before.length,after.length);
+				return both;
+			}
+
+			ArrayList<Long> found=new ArrayList<Long>();
+			for(long pos=from;pos<to;pos++){
+				byte current=byteAt(pos);
+				if((current=='\n' || (current=='\r' && pos+1<length && byteAt(pos+1)=='\n'))
+						&& pos>0 && byteAt(pos-1)=='\n'){
+					found.add(pos);
+				}
+			}
+
+			long[] blanks=new long[found.size()];
+			for(int entry=0;entry<blanks.length;entry++){
+				blanks[entry]=found.get(entry);
+			}
+			return blanks;
+		}
+	}
+
+	// Counts the rows of a range of tests, splitting large ranges.
+	private class RowCount extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+		private long[] starts;
+		private long[] ends;
+		private int[] rows;
+		private int from;
+		private int to;
+
+		RowCount(long[] testStarts, long[] testEnds, int[] rowCounts, int first, int last){
+			starts=testStarts;
+			ends=testEnds;
+			rows=rowCounts;
+			from=first;
+			to=last;
+		}
+
+		protected void compute(){
+			if(to-from>1){
+				int middle=(from+to)/2;
+				invokeAll(new RowCount(starts,ends,rows,from,middle),new RowCount(starts,ends,rows,middle,to));
+				return;
+			}
+
+			for(int test=from;test<to;test++){
+				int count=0;
+				for(long pos=starts[test];pos<ends[test];pos++){
+					if(byteAt(pos)=='\n'){
+						count++;
+					}
+				}
+				// Last line of the file may have no newline
+				if(ends[test]>starts[test] && byteAt(ends[test]-1)!='\n'){
+					count++;
+				}
+				rows[test]=count;
+			}
+		}
+	}
+
+	// Checks whether a stored index still describes this file.
+	// A changed modification time alone is not enough to rebuild: the content
+	// checksum is compared before giving up on the index.
+	public boolean isCurrent(TraceIndex stored, boolean isOffset){
+		if(stored.getOffset()!=isOffset || stored.getFileLength()!=length){
+			return false;
+		}
+		if(stored.getModified()==new File(filename).lastModified()){
+			return true;
+		}
+
+		return stored.getChecksum()==this.checksum();
+	}
+
+	// CRC32 of the whole file.
+	public long checksum(){
+		CRC32 crc=new CRC32();
+
+		for(MappedByteBuffer segment: segments){
+			crc.update(segment.duplicate());
+		}
+
+		return crc.getValue();
+	}
+
+	// Decodes the rows of a test into a block.
+	public TraceBlock readTest(int test, int[] types, int[] fields){
+		ArrayList<String> rows=this.readLines(test);
+		TraceBlock block=new TraceBlock(types,rows.size());
+
+		for(String row: rows){
+			block.appendRow(row,fields);
+		}
+
+		return block;
+	}
+
+	// Returns the data rows of a test, without the header.
+	public ArrayList<String> readLines(int test){
+		ArrayList<String> lines=new ArrayList<String>(index.getRowCount(test));
+		long lineStart=index.getTestStart(test);
+		long end=index.getTestEnd(test);
+
+		for(long pos=lineStart;pos<end;pos++){
+			if(this.byteAt(pos)=='\n'){
+				lines.add(this.decodeLine(lineStart,pos));
+				lineStart=pos+1;
+			}
+		}
+		if(lineStart<end){
+			lines.add(this.decodeLine(lineStart,end));
+		}
+
+		return lines;
+	}
+
+	private String decodeLine(long start, long end){
+		if(end>start && this.byteAt(end-1)=='\r'){
+			end--;
+		}
+		return this.decode(start,end);
+	}
+
+	// Copies a byte range out of the mapping and turns it into a String.
+	private String decode(long start, long end){
+		byte[] bytes=new byte[(int)(end-start)];
+
+		for(int index=0;index<bytes.length;index++){
+			bytes[index]=this.byteAt(start+index);
+		}
+
+		return new String(bytes,StandardCharsets.ISO_8859_1);
+	}
+
+	private byte byteAt(long pos){
+		return segments[(int)(pos>>>SEGMENT_BITS)].get((int)(pos&(SEGMENT_SIZE-1)));
+	}
+
+	public String getFilename(){
+		return filename;
+	}
+
+	public long getLength(){
+		return length;
+	}
+
+	public TraceIndex getIndex(){
+		return index;
+	}
+
+	public void setIndex(TraceIndex idx){
+		index=idx;
+	}
+
+	public String getHeader(){
+		return index.getHeader();
+	}
+
+	// CSV columns carry no type information.
+	public int getColumnType(int col){
+		return TraceTable.STRING;
+	}
+
+	public int getTestCount(){
+		return index.getTestCount();
+	}
+
+	public int getRowCount(int test){
+		return index.getRowCount(test);
+	}
+}
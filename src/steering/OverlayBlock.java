@@ -0,0 +1,171 @@
+/*	OverlayBlock
+	Sparse set of edits over an unchanged test block.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Replaced and appended rows kept apart, reads fall through to the base.
+		- Truncation tracked without touching the base block.
+
+	README:
+		- Used for the steered trace, over the blocks of the oracle trace. Only
+		  the steps steering rewrites take up memory of their own.
+		- getColumn() has to merge the base and the edits into a new array.
+		  Prefer getDouble/getString where possible.
+*/
+
+package steering;
+
+import java.util.Arrays;
+
+public class OverlayBlock extends TraceBlock {
+
+	// Unchanged rows, never written to
+	private TraceBlock base;
+	// Storage for replaced and appended rows
+	private TraceBlock edits;
+	// Row of the edits block holding each row, or -1 to read from the base.
+	// Null until the first edit.
+	private int[] slots;
+	private int rows;
+	// Leading rows of the base that are still part of this block
+	private int baseKept;
+
+	public OverlayBlock(TraceBlock under){
+		super(under.getTypes(),0);
+		base=under;
+		edits=new TraceBlock(under.getTypes(),4);
+		rows=base.getRowCount();
+		baseKept=rows;
+	}
+
+	public TraceBlock getBase(){
+		return base;
+	}
+
+	// Number of rows at the start of the base that have not been truncated
+	// away. Rows past this point are all edits.
+	public int getBaseRowsKept(){
+		return baseKept;
+	}
+
+	// True if a row has been replaced or appended, rather than read from the base.
+	public boolean isEdited(int row){
+		return slots!=null && row<rows && slots[row]!=-1;
+	}
+
+	public int getRowCount(){
+		return rows;
+	}
+
+	public double getDouble(int row, int col){
+		if(this.isEdited(row)){
+			return edits.getDouble(slots[row],col);
+		}
+		return base.getDouble(row,col);
+	}
+
+	public String getString(int row, int col){
+		if(this.isEdited(row)){
+			return edits.getString(slots[row],col);
+		}
+		return base.getString(row,col);
+	}
+
+	// Merged copy of a column.
+	public Object getColumn(int col){
+		TraceBlock merged=new TraceBlock(this.getTypes(),rows);
+		merged.setRowCount(rows);
+
+		for(int row=0;row<rows;row++){
+			if(this.isEdited(row)){
+				merged.setValue(row,col,edits.getString(slots[row],col));
+			}else{
+				merged.setValue(row,col,base.getString(row,col));
+			}
+		}
+
+		return merged.getColumn(col);
+	}
+
+	public void setRow(int row, String line){
+		edits.setRow(this.slotFor(row),line);
+		dirty.set(row);
+	}
+
+	public void appendRow(String line){
+		this.setRowCount(rows+1);
+		edits.setRow(this.slotFor(rows-1),line);
+	}
+
+	public void appendRow(String line, int[] fields){
+		TraceBlock decoded=new TraceBlock(this.getTypes(),1);
+		decoded.appendRow(line,fields);
+		this.setRowCount(rows+1);
+		this.copyRow(decoded,0,rows-1);
+	}
+
+	public void appendEdit(String line){
+		this.appendRow(line);
+		dirty.set(rows-1);
+	}
+
+	// New rows beyond the base hold default values until written.
+	public void setRowCount(int newSize){
+		if(newSize<rows){
+			this.truncate(newSize);
+			return;
+		}
+
+		this.ensureSlots(newSize);
+		int oldSize=rows;
+		rows=newSize;
+		// Rows past the kept base rows always live in the edits.
+		for(int row=oldSize;row<newSize;row++){
+			slots[row]=-1;
+			this.slotFor(row);
+		}
+	}
+
+	public void truncate(int newSize){
+		if(newSize<rows){
+			rows=newSize;
+			baseKept=Math.min(baseKept,newSize);
+			dirty.clear(newSize,Math.max(newSize,dirty.length()));
+		}
+	}
+
+	public void setValue(int row, int col, String value){
+		edits.setValue(this.slotFor(row),col,value);
+	}
+
+	public void copyRow(TraceBlock from, int fromRow, int row){
+		edits.copyRow(from,fromRow,this.slotFor(row));
+	}
+
+	// Finds (or makes) the edits row for a row. A base row is copied over
+	// the first time it is written, so partial writes keep the other columns.
+	private int slotFor(int row){
+		this.ensureSlots(rows);
+		if(slots[row]==-1){
+			int slot=edits.getRowCount();
+			edits.setRowCount(slot+1);
+			if(row<baseKept){
+				edits.copyRow(base,row,slot);
+			}
+			slots[row]=slot;
+		}
+		return slots[row];
+	}
+
+	private void ensureSlots(int needed){
+		if(slots==null){
+			slots=new int[Math.max(needed,1)];
+			Arrays.fill(slots,-1);
+		}else if(needed>slots.length){
+			int oldLength=slots.length;
+			slots=Arrays.copyOf(slots,Math.max(needed,oldLength+(oldLength>>1)+1));
+			Arrays.fill(slots,oldLength,slots.length,-1);
+		}
+	}
+}
@@ -2,7 +2,9 @@
 	Calculates TP/FP/TN/FN matrix for the pacemaker model
 
 	Gregory Gay (greg@greggay.com)
-	Last Updated: 06/18/2014
+	Last Updated: 10/18/2026
+		- Scores calculated directly from the TraceTables.
+	06/18/2014
 		- Initial file creation
  */
 
@@ -70,8 +72,8 @@ public class PacemakerResultChecker {
 			ArrayList<String> rutAll=worker.extractRecords(sp.getUnmutatedSUT(), null, test, -1);
 
 			// Do we need to steer for this test?
-			ArrayList<Double> initScores = scorer.calculate(oracle, sut);
-			ArrayList<Double> steeredScores = scorer.calculate(steered, sut);
+			ArrayList<Double> initScores = scorer.calculate(sp.getOracleTrace(), sp.getSutTrace(), sp.getOracleData(), test);
+			ArrayList<Double> steeredScores = scorer.calculate(sp.getSteeredTrace(), sp.getSutTrace(), sp.getOracleData(), test);
 			ArrayList<Integer> failingStepsO = new ArrayList<Integer>();
 			ArrayList<Integer> failingStepsS = new ArrayList<Integer>();
 
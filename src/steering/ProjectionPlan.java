@@ -0,0 +1,127 @@
+/*	ProjectionPlan
+	Compiled column selection for extracting records from a trace.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Column indexes, projected header and dummy row, computed once.
+		- Plans cached per (trace header, variable list).
+		- Entry of a variable found through a map, not a search of the header.
+
+	README:
+		- A null variable list selects every column, in file order.
+		- Plans are shared between threads and never change once built.
+*/
+
+package steering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+public class ProjectionPlan {
+
+	// Plans already compiled, keyed on (header line, variable list)
+	private static final HashMap<List<Object>,ProjectionPlan> cache=new HashMap<List<Object>,ProjectionPlan>();
+
+	// Columns of the trace to select, in output order
+	private int[] columns;
+	private String header;
+	// Entry of each selected variable (first one, if selected twice)
+	private HashMap<String,Integer> entries=new HashMap<String,Integer>();
+	// Row returned when a step does not exist
+	private String dummyRow;
+
+	private ProjectionPlan(TraceTable trace, List<String> variables) throws SteeringDataException{
+		if(variables!=null){
+			columns=new int[variables.size()];
+			for(int entry=0;entry<columns.length;entry++){
+				columns[entry]=trace.getColumnIndex(variables.get(entry));
+				if(columns[entry]==-1){
+					throw new SteeringDataException("Invalid element requested: "+variables.get(entry));
+				}
+			}
+		}else{
+			columns=new int[trace.getColumnCount()];
+			for(int entry=0;entry<columns.length;entry++){
+				columns[entry]=entry;
+			}
+		}
+
+		String[] names=trace.getHeader();
+		StringBuilder head=new StringBuilder();
+		StringBuilder dummy=new StringBuilder();
+		for(int entry=0;entry<columns.length;entry++){
+			if(entry>0){
+				head.append(',');
+				dummy.append(',');
+			}
+			head.append(names[columns[entry]]);
+			dummy.append('0');
+			if(!entries.containsKey(names[columns[entry]])){
+				entries.put(names[columns[entry]],entry);
+			}
+		}
+		header=head.toString();
+		dummyRow=dummy.toString();
+	}
+
+	// Returns the plan for a trace and variable list, compiling it on first use.
+	public static ProjectionPlan compile(TraceTable trace, List<String> variables) throws SteeringDataException{
+		List<Object> key=Arrays.asList((Object)trace.getHeaderLine(), variables);
+
+		synchronized(cache){
+			ProjectionPlan plan=cache.get(key);
+			if(plan==null){
+				plan=new ProjectionPlan(trace,variables);
+				// Copy the list, so later changes to it cannot corrupt the key.
+				List<String> copy=null;
+				if(variables!=null){
+					copy=new ArrayList<String>(variables);
+				}
+				cache.put(Arrays.asList((Object)trace.getHeaderLine(), copy),plan);
+			}
+			return plan;
+		}
+	}
+
+	public int[] getColumns(){
+		return columns;
+	}
+
+	public int getColumnCount(){
+		return columns.length;
+	}
+
+	public String getHeader(){
+		return header;
+	}
+
+	// Entry of a variable in the projected header, or -1 if it is not selected.
+	public int getEntry(String variable){
+		Integer entry=entries.get(variable);
+		if(entry==null){
+			return -1;
+		}
+		return entry;
+	}
+
+	public String getDummyRow(){
+		return dummyRow;
+	}
+
+	// Renders the selected columns of a row.
+	public String render(TraceBlock block, int row){
+		StringBuilder line=new StringBuilder(columns.length*4);
+
+		for(int entry=0;entry<columns.length;entry++){
+			if(entry>0){
+				line.append(',');
+			}
+			line.append(block.getString(row,columns[entry]));
+		}
+
+		return line.toString();
+	}
+}
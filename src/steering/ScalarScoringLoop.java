@@ -0,0 +1,57 @@
+/*	ScalarScoringLoop
+	Plain Java scoring loops, used when the vectorized loops are unavailable.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Unnormalized variables skip the divisions (exact: x-0.0 and x/1.0 are x).
+*/
+
+package steering;
+
+public class ScalarScoringLoop implements ScoringLoop {
+
+	public void addBool(double[] oVals, double[] sVals, double[] scores, int rows){
+		addBool(oVals, sVals, scores, 0, rows);
+	}
+
+	public void addDistance(double[] oVals, double[] sVals, double[] scores, int rows, double offset, double scale, boolean squared){
+		addDistance(oVals, sVals, scores, 0, rows, offset, scale, squared);
+	}
+
+	// As above, for rows from (inclusive) to rows (exclusive). Used by the
+	// vectorized loops for the rows left over after the last full vector.
+	public static void addBool(double[] oVals, double[] sVals, double[] scores, int from, int rows){
+		for(int row = from; row<rows; row++){
+			if(oVals[row]!=sVals[row]){
+				scores[row]+=1;
+			}
+		}
+	}
+
+	public static void addDistance(double[] oVals, double[] sVals, double[] scores, int from, int rows, double offset, double scale, boolean squared){
+		// One loop per case, so each stays branch-free.
+		if(offset!=0.0 || scale!=1.0){
+			if(squared){
+				for(int row = from; row<rows; row++){
+					double dist = ((oVals[row]-offset)/scale) - ((sVals[row]-offset)/scale);
+					scores[row]+=(dist*dist);
+				}
+			}else{
+				for(int row = from; row<rows; row++){
+					double dist = ((oVals[row]-offset)/scale) - ((sVals[row]-offset)/scale);
+					scores[row]+=Math.abs(dist);
+				}
+			}
+		}else if(squared){
+			for(int row = from; row<rows; row++){
+				double dist = oVals[row]-sVals[row];
+				scores[row]+=(dist*dist);
+			}
+		}else{
+			for(int row = from; row<rows; row++){
+				scores[row]+=Math.abs(oVals[row]-sVals[row]);
+			}
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/*	ScoringBenchmark
+	Times the scalar and vectorized scoring loops against each other.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Scores the oracle and SUT traces of a steering configuration.
+		- Times the loops alone, on columns already held as doubles.
+		- Scores a synthetic trace with 1000 variables, with and without normalization.
+
+	README:
+		- Usage: ScoringBenchmark [passes] [config]
+		  Run with --add-modules jdk.incubator.vector, after make simd (see
+		  bin/Makefile), for the vectorized loops to be timed too.
+		- With a configuration, every test of the oracle trace is scored
+		  against the SUT trace, on the oracle variables and metric of the
+		  configuration. Tests are decoded before timing starts.
+		- The synthetic trace has 400 real, 400 int and 200 bool variables
+		  over 100 tests of 500 steps, with about one value in ten differing.
+		- Reports milliseconds per pass over all tests, and checks that both
+		  loops give identical scores. The loops alone show the gain from
+		  vectorizing. Whole tests also pay for reading each column into
+		  doubles, which both loops share.
+*/
+
+package steering;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+public class ScoringBenchmark {
+
+	private static final int VARIABLES=1000;
+	private static final int TESTS=100;
+	private static final int STEPS=500;
+	// Loop calls (tests times variables) made before timing starts
+	private static final int WARMUP=200000;
+
+	public static void main(String[] args) throws Exception{
+		int passes=20;
+		if(args.length>0){
+			passes=Integer.parseInt(args[0]);
+		}
+
+		ScoringLoop vector=ScoringKernel.vectorLoop();
+		if(vector==null){
+			System.out.println("Vectorized loops not available, timing the scalar loops only.");
+		}
+
+		if(args.length>1){
+			SteerModel steerer=new SteerModel(args[1], false);
+			TraceTable oracle=steerer.getOracleTrace();
+			TraceTable sut=steerer.getSutTrace();
+			ScoringKernel kernel=new GetScores(steerer).getKernel(oracle, sut, steerer.getOracleData());
+			System.out.println("Configuration "+args[1]+": "+steerer.getOracleData().size()+" variables, "+oracle.getTestCount()+" tests, metric "+steerer.getMetric());
+			run(kernel, oracle, sut, vector, passes);
+		}
+
+		loops(new ScalarScoringLoop(), vector, passes);
+
+		TraceTable[] traces=synthetic();
+		for(int setting=0;setting<3;setting++){
+			boolean squared=(setting==1);
+			boolean normalized=(setting==2);
+			System.out.println("Synthetic: "+VARIABLES+" variables, "+TESTS+" tests of "+STEPS+" steps, "+(squared ? "sqeuclid" : "manhattan")+(normalized ? ", normalized" : ""));
+			int[] cols=new int[VARIABLES];
+			int[] flags=new int[VARIABLES];
+			double[] offset=new double[VARIABLES];
+			double[] scale=new double[VARIABLES];
+			for(int var=0;var<VARIABLES;var++){
+				cols[var]=var;
+				flags[var]=(traces[0].getType(var)==TraceTable.BOOL) ? ScoringKernel.BOOL : ScoringKernel.NUMERIC;
+				offset[var]=0.0;
+				scale[var]=(normalized && flags[var]!=ScoringKernel.BOOL) ? 100.0 : 1.0;
+			}
+			run(new ScoringKernel(cols, cols, flags, offset, scale, squared), traces[0], traces[1], vector, passes);
+		}
+	}
+
+	// Times the loops alone, on columns of STEPS values already in memory.
+	private static void loops(ScoringLoop scalar, ScoringLoop vector, int passes){
+		System.out.println("Loops only: "+VARIABLES+" variables of "+STEPS+" steps");
+		Random random=new Random(42);
+		double[][] oCols=new double[VARIABLES][STEPS];
+		double[][] sCols=new double[VARIABLES][STEPS];
+		for(int var=0;var<VARIABLES;var++){
+			for(int step=0;step<STEPS;step++){
+				oCols[var][step]=random.nextInt(100);
+				sCols[var][step]=(random.nextInt(10)==0) ? random.nextInt(100) : oCols[var][step];
+			}
+		}
+
+		double[] scalarScores=new double[STEPS];
+		double[] vectorScores=new double[STEPS];
+		double scalarTime=timeLoop(scalar, oCols, sCols, scalarScores, passes);
+		System.out.println("\tscalar: "+String.format("%.3f", scalarTime)+" ms/pass");
+		if(vector!=null){
+			double vectorTime=timeLoop(vector, oCols, sCols, vectorScores, passes);
+			System.out.println("\tvector: "+String.format("%.3f", vectorTime)+" ms/pass, speedup "+String.format("%.2f", scalarTime/vectorTime)+"x, scores identical: "+java.util.Arrays.equals(scalarScores, vectorScores));
+		}
+	}
+
+	// One pass adds every variable to the scores: the first fifth as
+	// booleans, the rest as distances.
+	private static double timeLoop(ScoringLoop loop, double[][] oCols, double[][] sCols, double[] scores, int passes){
+		long start=0;
+		for(int pass=-passes;pass<passes;pass++){
+			if(pass==0){
+				start=System.nanoTime();
+			}
+			java.util.Arrays.fill(scores, 0.0);
+			for(int var=0;var<oCols.length;var++){
+				if(var<oCols.length/5){
+					loop.addBool(oCols[var], sCols[var], scores, scores.length);
+				}else{
+					loop.addDistance(oCols[var], sCols[var], scores, scores.length, 0.0, 1.0, false);
+				}
+			}
+		}
+
+		return (System.nanoTime()-start)/1e6/passes;
+	}
+
+	// Times each loop over every test, after warming it up.
+	private static void run(ScoringKernel kernel, TraceTable oracle, TraceTable sut, ScoringLoop vector, int passes){
+		int tests=Math.min(oracle.getTestCount(), sut.getTestCount());
+		double[][] scalarScores=new double[tests][];
+		double[][] vectorScores=new double[tests][];
+
+		double scalarTime=time(kernel.withLoop(new ScalarScoringLoop()), oracle, sut, scalarScores, passes);
+		System.out.println("\tscalar: "+String.format("%.3f", scalarTime)+" ms/pass");
+
+		if(vector!=null){
+			double vectorTime=time(kernel.withLoop(vector), oracle, sut, vectorScores, passes);
+			boolean same=true;
+			for(int test=0;test<tests;test++){
+				same=same && java.util.Arrays.equals(scalarScores[test], vectorScores[test]);
+			}
+			System.out.println("\tvector: "+String.format("%.3f", vectorTime)+" ms/pass, speedup "+String.format("%.2f", scalarTime/vectorTime)+"x, scores identical: "+same);
+		}
+	}
+
+	private static double time(ScoringKernel kernel, TraceTable oracle, TraceTable sut, double[][] scores, int passes){
+		for(int test=0;test<scores.length;test++){
+			TraceBlock oBlock=oracle.getTest(test);
+			TraceBlock sBlock=sut.getTest(test);
+			scores[test]=new double[kernel.getStepCount(oBlock, sBlock)];
+		}
+
+		// Warm up until the loops are compiled (called at least WARMUP times).
+		long calls=0;
+		while(calls<WARMUP){
+			for(int test=0;test<scores.length;test++){
+				kernel.score(oracle.getTest(test), sut.getTest(test), scores[test]);
+			}
+			calls+=Math.max(1L, (long)scores.length*kernel.getVariableCount());
+		}
+
+		long start=System.nanoTime();
+		for(int pass=0;pass<passes;pass++){
+			for(int test=0;test<scores.length;test++){
+				kernel.score(oracle.getTest(test), sut.getTest(test), scores[test]);
+			}
+		}
+
+		return (System.nanoTime()-start)/1e6/passes;
+	}
+
+	// Oracle and SUT traces with the same header and about one value in ten
+	// changed.
+	private static TraceTable[] synthetic(){
+		Random random=new Random(42);
+		HashMap<String,String> typeMap=new HashMap<String,String>();
+		StringBuilder header=new StringBuilder();
+		for(int var=0;var<VARIABLES;var++){
+			String name="v"+var;
+			if(var>0){
+				header.append(',');
+			}
+			header.append(name);
+			if(var<400){
+				typeMap.put(name, "real");
+			}else if(var<800){
+				typeMap.put(name, "int");
+			}else{
+				typeMap.put(name, "bool");
+			}
+		}
+
+		TraceTable oracle=new TraceTable(header.toString(), typeMap);
+		TraceTable sut=new TraceTable(header.toString(), typeMap);
+		String[] oRow=new String[VARIABLES];
+		String[] sRow=new String[VARIABLES];
+		for(int test=0;test<TESTS;test++){
+			ArrayList<String> oRows=new ArrayList<String>();
+			ArrayList<String> sRows=new ArrayList<String>();
+			for(int step=0;step<STEPS;step++){
+				for(int var=0;var<VARIABLES;var++){
+					if(var<400){
+						oRow[var]=Double.toString(random.nextInt(10000)/100.0);
+					}else if(var<800){
+						oRow[var]=Integer.toString(random.nextInt(100));
+					}else{
+						oRow[var]=random.nextBoolean() ? "1" : "0";
+					}
+					sRow[var]=(random.nextInt(10)==0) ? Integer.toString(random.nextInt(2)) : oRow[var];
+				}
+				oRows.add(join(oRow));
+				sRows.add(join(sRow));
+			}
+			oracle.addTest(oRows);
+			sut.addTest(sRows);
+		}
+
+		return new TraceTable[]{oracle, sut};
+	}
+
+	private static String join(String[] values){
+		StringBuilder line=new StringBuilder();
+		for(int entry=0;entry<values.length;entry++){
+			if(entry>0){
+				line.append(',');
+			}
+			line.append(values[entry]);
+		}
+		return line.toString();
+	}
+}
@@ -0,0 +1,316 @@
+/*	ScoringKernel
+	Compiled distance calculation between the oracle and SUT rows of a test.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Columns, type flags and normalization resolved once, into arrays.
+		- Scores a test column by column, reading the column arrays directly.
+		- Single steps scored on their own (scoreRow).
+		- Inner loops split out (ScoringLoop), vectorized when the Vector API is available.
+		- Row hashes over the scored columns. Rows with equal hashes are not scored.
+
+	README:
+		- Built by GetScores, once per (oracle header, SUT header, variables).
+		- Each variable adds |a-b| (manhattan) or (a-b)^2 (squared euclidean)
+		  of its normalized values, or 1 if it is a boolean and differs.
+		- Normalized values are (value-offset)/scale, worked out exactly as
+		  before, so scores do not change by a bit.
+		- Kernels never change once built, and can be shared between threads.
+		- scoreChanged and firstDivergence compare 64-bit hashes of the scored
+		  values of each row first. Rows hashing the same hold the same values
+		  and score 0, only the others are scored. Hashes of unedited blocks
+		  are kept until the block is dropped (weakly held); blocks with dirty
+		  rows are scored in full.
+		- steering.simd.VectorScoringLoop is used if it loads (compiled, and run
+		  with --add-modules jdk.incubator.vector). -Dsteering.simd=false
+		  keeps the scalar loops.
+*/
+
+package steering;
+
+import java.util.WeakHashMap;
+
+public class ScoringKernel {
+
+	// Variable type flags
+	public static final int NUMERIC=0;
+	public static final int BOOL=1;
+
+	// Score given to steps missing from one of the traces
+	public static final double MISSING=10000.0;
+
+	private int[] oracleCols;
+	private int[] sutCols;
+	private int[] flags;
+	private double[] offset;
+	private double[] scale;
+	private boolean squared;
+	private ScoringLoop loop;
+	// Row hashes of unedited blocks, on the oracle and SUT columns
+	private WeakHashMap<TraceBlock,long[]> oracleHashes;
+	private WeakHashMap<TraceBlock,long[]> sutHashes;
+
+	// Loops given to new kernels
+	private static final ScoringLoop DEFAULT_LOOP=selectLoop();
+
+	public ScoringKernel(int[] oCols, int[] sCols, int[] typeFlags, double[] offsets, double[] scales, boolean isSquared){
+		this(oCols, sCols, typeFlags, offsets, scales, isSquared, DEFAULT_LOOP);
+	}
+
+	public ScoringKernel(int[] oCols, int[] sCols, int[] typeFlags, double[] offsets, double[] scales, boolean isSquared, ScoringLoop scoringLoop){
+		oracleCols=oCols;
+		sutCols=sCols;
+		flags=typeFlags;
+		offset=offsets;
+		scale=scales;
+		squared=isSquared;
+		loop=scoringLoop;
+		oracleHashes=new WeakHashMap<TraceBlock,long[]>();
+		sutHashes=new WeakHashMap<TraceBlock,long[]>();
+	}
+
+	// The vectorized loops if they can be loaded, unless turned off with
+	// -Dsteering.simd=false. Otherwise the scalar loops.
+	private static ScoringLoop selectLoop(){
+		ScoringLoop vector=null;
+		if(!"false".equals(System.getProperty("steering.simd"))){
+			vector=vectorLoop();
+		}
+		if(vector==null){
+			return new ScalarScoringLoop();
+		}
+		return vector;
+	}
+
+	// Loads the vectorized loops (steering.simd). Null if they were not
+	// compiled, or jdk.incubator.vector was not added to the run.
+	public static ScoringLoop vectorLoop(){
+		try{
+			return (ScoringLoop)Class.forName("steering.simd.VectorScoringLoop").getConstructor().newInstance();
+		}catch(Exception e){
+			return null;
+		}catch(LinkageError e){
+			return null;
+		}
+	}
+
+	public static ScoringLoop getDefaultLoop(){
+		return DEFAULT_LOOP;
+	}
+
+	public ScoringLoop getLoop(){
+		return loop;
+	}
+
+	// Same kernel, scoring with other loops.
+	public ScoringKernel withLoop(ScoringLoop scoringLoop){
+		ScoringKernel kernel=new ScoringKernel(oracleCols, sutCols, flags, offset, scale, squared, scoringLoop);
+		kernel.oracleHashes=oracleHashes;
+		kernel.sutHashes=sutHashes;
+		return kernel;
+	}
+
+	public int getVariableCount(){
+		return flags.length;
+	}
+
+	// Number of scores for a test (one per step of the longer trace).
+	public int getStepCount(TraceBlock oBlock, TraceBlock sBlock){
+		return Math.max(oBlock.getRowCount(), sBlock.getRowCount());
+	}
+
+	// Scores every step of a test into scores (at least getStepCount long).
+	public void score(TraceBlock oBlock, TraceBlock sBlock, double[] scores){
+		int rows = Math.min(oBlock.getRowCount(), sBlock.getRowCount());
+		int steps = this.getStepCount(oBlock, sBlock);
+		double[] oVals = new double[rows];
+		double[] sVals = new double[rows];
+
+		for(int row = 0; row<rows; row++){
+			scores[row] = 0.0;
+		}
+		for(int row = rows; row<steps; row++){
+			scores[row] = MISSING;
+		}
+
+		// Column by column: each pass is a sequential read of two columns.
+		for(int var = 0; var<flags.length; var++){
+			load(oBlock, oracleCols[var], rows, oVals);
+			load(sBlock, sutCols[var], rows, sVals);
+
+			if(flags[var]==BOOL){
+				loop.addBool(oVals, sVals, scores, rows);
+			}else{
+				loop.addDistance(oVals, sVals, scores, rows, offset[var], scale[var], squared);
+			}
+		}
+	}
+
+	// Scores a single step, as score() would.
+	public double scoreRow(TraceBlock oBlock, TraceBlock sBlock, int row){
+		if(row>=oBlock.getRowCount() || row>=sBlock.getRowCount()){
+			return MISSING;
+		}
+
+		double score = 0.0;
+		for(int var = 0; var<flags.length; var++){
+			double oVal = oBlock.getDouble(row, oracleCols[var]);
+			double sVal = sBlock.getDouble(row, sutCols[var]);
+			if(Double.isNaN(oVal)){
+				oVal = 0.0;
+			}
+			if(Double.isNaN(sVal)){
+				sVal = 0.0;
+			}
+
+			if(flags[var]==BOOL){
+				if(oVal!=sVal){
+					score+=1;
+				}
+			}else{
+				double dist = ((oVal-offset[var])/scale[var]) - ((sVal-offset[var])/scale[var]);
+				if(squared){
+					score+=(dist*dist);
+				}else{
+					score+=Math.abs(dist);
+				}
+			}
+		}
+
+		return score;
+	}
+
+	// Scores every step of a test, as score() would, scoring only the rows
+	// whose hashes differ. Falls back to score() for edited blocks, or when
+	// most rows differ anyway.
+	public void scoreChanged(TraceBlock oBlock, TraceBlock sBlock, double[] scores){
+		long[] oHashes = this.hashesOf(oBlock, oracleCols, oracleHashes);
+		long[] sHashes = (oHashes==null) ? null : this.hashesOf(sBlock, sutCols, sutHashes);
+		if(sHashes==null){
+			this.score(oBlock, sBlock, scores);
+			return;
+		}
+
+		int rows = Math.min(oBlock.getRowCount(), sBlock.getRowCount());
+		int steps = this.getStepCount(oBlock, sBlock);
+		int changed = 0;
+		for(int row = 0; row<rows; row++){
+			if(oHashes[row]!=sHashes[row]){
+				changed++;
+			}
+		}
+		// Row by row reads cost more than a column pass over the whole test.
+		if(changed*4>=rows){
+			this.score(oBlock, sBlock, scores);
+			return;
+		}
+
+		for(int row = 0; row<rows; row++){
+			scores[row] = (oHashes[row]==sHashes[row]) ? 0.0 : this.scoreRow(oBlock, sBlock, row);
+		}
+		for(int row = rows; row<steps; row++){
+			scores[row] = MISSING;
+		}
+	}
+
+	// First step scoring above 0, or -1 if the traces never diverge. Stops at
+	// the first row whose hashes differ and does score.
+	public int firstDivergence(TraceBlock oBlock, TraceBlock sBlock){
+		int rows = Math.min(oBlock.getRowCount(), sBlock.getRowCount());
+		int steps = this.getStepCount(oBlock, sBlock);
+		long[] oHashes = this.hashesOf(oBlock, oracleCols, oracleHashes);
+		long[] sHashes = (oHashes==null) ? null : this.hashesOf(sBlock, sutCols, sutHashes);
+
+		if(sHashes==null){
+			double[] scores = new double[steps];
+			this.score(oBlock, sBlock, scores);
+			for(int row = 0; row<steps; row++){
+				if(scores[row]>0.0){
+					return row;
+				}
+			}
+			return -1;
+		}
+
+		for(int row = 0; row<rows; row++){
+			if(oHashes[row]!=sHashes[row] && this.scoreRow(oBlock, sBlock, row)>0.0){
+				return row;
+			}
+		}
+		// Steps missing from one trace always score MISSING.
+		return (rows<steps) ? rows : -1;
+	}
+
+	// Row hashes of a block on the given columns, kept while the block is
+	// unedited. Null if it has dirty rows.
+	private long[] hashesOf(TraceBlock block, int[] cols, WeakHashMap<TraceBlock,long[]> cache){
+		if(!block.getDirtyRows().isEmpty()){
+			return null;
+		}
+
+		long[] hashes;
+		synchronized(cache){
+			hashes = cache.get(block);
+		}
+		if(hashes==null || hashes.length!=block.getRowCount()){
+			hashes = hashRows(block, cols);
+			synchronized(cache){
+				cache.put(block, hashes);
+			}
+		}
+
+		return hashes;
+	}
+
+	// 64-bit hash of the values of each row, in column order. Values are
+	// hashed as scored (NaN read as 0), so equal hashes score 0.
+	private static long[] hashRows(TraceBlock block, int[] cols){
+		int rows = block.getRowCount();
+		long[] hashes = new long[rows];
+		double[] values = new double[rows];
+
+		for(int var = 0; var<cols.length; var++){
+			load(block, cols[var], rows, values);
+			for(int row = 0; row<rows; row++){
+				long bits = Double.doubleToLongBits(values[row])*0xC2B2AE3D27D4EB4FL;
+				hashes[row] = Long.rotateLeft(hashes[row]^bits, 31)*0x9E3779B97F4A7C15L;
+			}
+		}
+
+		return hashes;
+	}
+
+	// Copies the first rows of a column into values, NaN read as 0. Plain
+	// blocks are read straight from their column arrays.
+	private static void load(TraceBlock block, int col, int rows, double[] values){
+		if(block.getClass()==TraceBlock.class){
+			Object column = block.getColumn(col);
+			if(column instanceof boolean[]){
+				boolean[] bools = (boolean[])column;
+				for(int row = 0; row<rows; row++){
+					values[row] = bools[row] ? 1.0 : 0.0;
+				}
+				return;
+			}else if(column instanceof int[]){
+				int[] ints = (int[])column;
+				for(int row = 0; row<rows; row++){
+					values[row] = ints[row];
+				}
+				return;
+			}else if(column instanceof double[]){
+				double[] reals = (double[])column;
+				for(int row = 0; row<rows; row++){
+					double value = reals[row];
+					values[row] = Double.isNaN(value) ? 0.0 : value;
+				}
+				return;
+			}
+		}
+
+		for(int row = 0; row<rows; row++){
+			double value = block.getDouble(row, col);
+			values[row] = Double.isNaN(value) ? 0.0 : value;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+/*	ScoringLoop
+	Inner loops of a ScoringKernel, adding one variable's distance to the
+	scores of a test.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+
+	README:
+		- Implemented by ScalarScoringLoop, and by steering.simd.VectorScoringLoop
+		  when the Vector API is available (see ScoringKernel).
+		- Values are the oracle and SUT column of the variable, NaN already
+		  read as 0. Only the first rows entries are used.
+		- Implementations must give exactly the scalar results: each row is
+		  worked out with the same operations, in the same order.
+*/
+
+package steering;
+
+public interface ScoringLoop {
+
+	// Adds 1 to the score of each row where the values differ.
+	public void addBool(double[] oVals, double[] sVals, double[] scores, int rows);
+
+	// Adds |a-b| (or (a-b)^2, if squared) of the values normalized as
+	// (value-offset)/scale.
+	public void addDistance(double[] oVals, double[] sVals, double[] scores, int rows, double offset, double scale, boolean squared);
+}
@@ -0,0 +1,255 @@
+/*	SmtLibEncoding
+	SMT-LIB translation of an injected model, for solvers run directly.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- One step of the injected model, translated by jKind's own translator.
+		- Goal comparison released from prop, so goals can be set separately.
+		- Reads values back from get-value answers.
+
+	README:
+		- The injected model has no pre (its state is set as constants), so
+		  a single step is the whole query. jKind's streams are functions of
+		  the step. Here they are instantiated at step 0 and declared as
+		  plain constants, named as jKind names them ($<variable>).
+		- getAssertions() asserts the transition relation and that prop is
+		  violated, with the "score_steered < goal" part of prop replaced by
+		  true: what is left is the tolerances. Goals are then asserted (or
+		  minimized) on getScore() by the caller.
+		- Values are returned in the form the interpreter reads: 1/0 for
+		  booleans, integers as they are, and reals as decimals.
+*/
+
+package steering;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import jkind.Main;
+import jkind.lustre.Node;
+import jkind.lustre.Program;
+import jkind.sexp.Cons;
+import jkind.sexp.Sexp;
+import jkind.sexp.Symbol;
+import jkind.solvers.StreamDecl;
+import jkind.solvers.StreamDef;
+import jkind.translation.Lustre2Sexps;
+import jkind.translation.Translate;
+import jkind.util.Util;
+
+public class SmtLibEncoding {
+
+	private String declarations;
+	private String assertions;
+	// Variable to SMT-LIB sort (Bool, Int or Real)
+	private HashMap<String,String> sorts=new HashMap<String,String>();
+
+	// Translates an injected model written to lustreFile.
+	public SmtLibEncoding(String lustreFile) throws Exception{
+		Program program;
+		try{
+			program=Main.parseLustre(lustreFile);
+		}catch(IOException e){
+			throw new SteeringException("Unable to read injected model: "+lustreFile);
+		}
+		Node node=Translate.translate(program);
+		Lustre2Sexps translation=new Lustre2Sexps(node);
+
+		HashSet<String> streams=new HashSet<String>();
+		StringBuilder decls=new StringBuilder();
+		for(StreamDecl decl: translation.getDeclarations()){
+			String sort=capitalize(Util.getName(decl.getType()));
+			streams.add(decl.getId().sym);
+			sorts.put(decl.getId().sym.substring(1), sort);
+			decls.append("(declare-fun ").append(decl.getId().sym).append(" () ").append(sort).append(")\n");
+		}
+		declarations=decls.toString();
+
+		StreamDef transition=translation.getTransition();
+		Sexp step=constants(transition.instantiate(Sexp.fromInt(0)), streams);
+		assertions="(assert "+step+")\n(assert (not $prop))\n";
+	}
+
+	private static String capitalize(String name){
+		return name.substring(0,1).toUpperCase()+name.substring(1);
+	}
+
+	// Streams applied to a step become constants, and the goal comparison
+	// on score_steered is released.
+	private static Sexp constants(Sexp sexp, HashSet<String> streams){
+		if(!(sexp instanceof Cons)){
+			return sexp;
+		}
+		Cons cons=(Cons)sexp;
+		if(cons.head instanceof Symbol && streams.contains(((Symbol)cons.head).sym) && cons.args.size()==1){
+			return cons.head;
+		}
+
+		ArrayList<Sexp> args=new ArrayList<Sexp>();
+		for(Sexp arg: cons.args){
+			args.add(constants(arg, streams));
+		}
+		if(cons.head instanceof Symbol && ((Symbol)cons.head).sym.equals("<") && args.size()==2 && args.get(0).equals(new Symbol("$score_steered"))){
+			return new Symbol("true");
+		}
+		return new Cons(constants(cons.head, streams), args);
+	}
+
+	public String getDeclarations(){
+		return declarations;
+	}
+
+	// The step, and prop violated on the tolerances alone.
+	public String getAssertions(){
+		return assertions;
+	}
+
+	// Constant holding the steered score.
+	public String getScore(){
+		return "$score_steered";
+	}
+
+	// Constant holding a variable, or null if the model has no such variable.
+	public String getConstant(String variable){
+		if(sorts.containsKey(variable)){
+			return "$"+variable;
+		}
+		return null;
+	}
+
+	// get-value command for the given variables (those in the model) and the score.
+	public String getValues(List<String> variables){
+		StringBuilder command=new StringBuilder("(get-value (");
+		for(String variable: variables){
+			if(sorts.containsKey(variable)){
+				command.append("$").append(variable).append(" ");
+			}
+		}
+		command.append(this.getScore()).append("))");
+		return command.toString();
+	}
+
+	// Parses a get-value answer into variable to value (without the $),
+	// in the form the interpreter reads.
+	public static HashMap<String,String> parseValues(String answer) throws SteeringException{
+		HashMap<String,String> values=new HashMap<String,String>();
+		Object parsed=parse(answer, new int[]{0});
+		if(!(parsed instanceof List)){
+			throw new SteeringException("Unexpected solver answer: "+answer);
+		}
+		for(Object pair: (List<?>)parsed){
+			if(!(pair instanceof List) || ((List<?>)pair).size()!=2 || !(((List<?>)pair).get(0) instanceof String)){
+				throw new SteeringException("Unexpected solver answer: "+answer);
+			}
+			String name=(String)((List<?>)pair).get(0);
+			if(name.startsWith("$")){
+				name=name.substring(1);
+			}
+			values.put(name, value(((List<?>)pair).get(1)));
+		}
+		return values;
+	}
+
+	// Reads one s-expression: atoms as Strings, lists as Lists.
+	private static Object parse(String text, int[] pos) throws SteeringException{
+		while(pos[0]<text.length() && Character.isWhitespace(text.charAt(pos[0]))){
+			pos[0]++;
+		}
+		if(pos[0]>=text.length()){
+			throw new SteeringException("Unexpected end of solver answer: "+text);
+		}
+
+		if(text.charAt(pos[0])=='('){
+			pos[0]++;
+			ArrayList<Object> list=new ArrayList<Object>();
+			while(true){
+				while(pos[0]<text.length() && Character.isWhitespace(text.charAt(pos[0]))){
+					pos[0]++;
+				}
+				if(pos[0]>=text.length()){
+					throw new SteeringException("Unexpected end of solver answer: "+text);
+				}
+				if(text.charAt(pos[0])==')'){
+					pos[0]++;
+					return list;
+				}
+				list.add(parse(text, pos));
+			}
+		}
+
+		int start=pos[0];
+		if(text.charAt(pos[0])=='|'){
+			int end=text.indexOf('|', start+1);
+			if(end==-1){
+				throw new SteeringException("Unexpected end of solver answer: "+text);
+			}
+			pos[0]=end+1;
+			return text.substring(start+1, end);
+		}
+		while(pos[0]<text.length() && !Character.isWhitespace(text.charAt(pos[0])) && text.charAt(pos[0])!='(' && text.charAt(pos[0])!=')'){
+			pos[0]++;
+		}
+		return text.substring(start, pos[0]);
+	}
+
+	// A value as the interpreter reads it.
+	private static String value(Object value) throws SteeringException{
+		if(value.equals("true")){
+			return "1";
+		}else if(value.equals("false")){
+			return "0";
+		}
+
+		BigDecimal number=number(value);
+		if(number==null){
+			// Not a number (e.g. an irrational root), counted as unknown.
+			throw new SteeringException("Unsupported value in solver answer: "+value);
+		}
+		if(number.signum()==0 || number.stripTrailingZeros().scale()<=0){
+			return number.toBigInteger().toString();
+		}
+		return Double.toString(number.doubleValue());
+	}
+
+	// Numeric value of a constant, (- x) or (/ x y). Null if not numeric.
+	private static BigDecimal number(Object value){
+		if(value instanceof String){
+			try{
+				return new BigDecimal((String)value);
+			}catch(NumberFormatException e){
+				return null;
+			}
+		}
+
+		List<?> list=(List<?>)value;
+		if(list.size()==2 && list.get(0).equals("-")){
+			BigDecimal inner=number(list.get(1));
+			return (inner==null) ? null : inner.negate();
+		}else if(list.size()==3 && list.get(0).equals("/")){
+			BigDecimal num=number(list.get(1));
+			BigDecimal den=number(list.get(2));
+			if(num==null || den==null || den.signum()==0){
+				return null;
+			}
+			if(num.remainder(den).signum()==0){
+				return new BigDecimal(num.divide(den).toBigInteger());
+			}
+			return new BigDecimal(num.doubleValue()/den.doubleValue());
+		}
+		return null;
+	}
+
+	// Score from a parsed answer, never below 0.
+	public static double scoreOf(HashMap<String,String> values){
+		String score=values.get("score_steered");
+		if(score==null){
+			return Double.NaN;
+		}
+		return Math.max(0.0, Double.parseDouble(score));
+	}
+}
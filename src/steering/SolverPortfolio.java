@@ -0,0 +1,222 @@
+/*	SolverPortfolio
+	Runs jKind on the same query with several solvers at once, and takes
+	the first definitive answer.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- close() cancels the runs still going before stopping the pool.
+
+	README:
+		- Solvers are named as in jKind's -solver option (z3, yices, cvc4),
+		  in a comma-separated list (the solvers= entry of the configuration
+		  file). Each needs to be installed locally.
+		- With one solver, jKind is run directly, as the steering loop always
+		  did. With several, each gets its own jKind run, in parallel.
+		- An answer is definitive when every property is valid or invalid.
+		  The first definitive answer wins, and the other runs are cancelled
+		  through their progress monitors (jKind polls them, and stops its
+		  process once cancelled). If no run is definitive, the first answer
+		  to come back is used.
+		- A run that fails (e.g. a solver that is not installed) is skipped,
+		  unless every run fails.
+		- close() cancels any runs still going (e.g. when steering stops on
+		  an exception) and shuts down the worker threads.
+*/
+
+package steering;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import jkind.SolverOption;
+import jkind.api.JKindApi;
+import jkind.api.results.JKindResult;
+import jkind.api.results.PropertyResult;
+import jkind.results.InvalidProperty;
+import jkind.results.ValidProperty;
+
+public class SolverPortfolio {
+
+	private ArrayList<SolverOption> solvers=new ArrayList<SolverOption>();
+	private ArrayList<JKindApi> runners=new ArrayList<JKindApi>();
+	private ExecutorService pool;
+	// Solver that gave the last answer
+	private SolverOption winner;
+	// Monitors of the runs of the last query
+	private IProgressMonitor[] running;
+
+	public SolverPortfolio(List<SolverOption> options){
+		for(SolverOption solver: options){
+			JKindApi jkind = new JKindApi();
+			jkind.setN(1);
+			jkind.setSolver(solver);
+			jkind.setBoundedModelChecking();
+			solvers.add(solver);
+			runners.add(jkind);
+		}
+	}
+
+	// Portfolio from a comma-separated list of solver names.
+	public static SolverPortfolio forNames(String names) throws SteeringDataException{
+		ArrayList<SolverOption> options=new ArrayList<SolverOption>();
+		for(String name: names.split(",")){
+			name=name.trim();
+			if(name.isEmpty()){
+				continue;
+			}
+			try{
+				SolverOption solver=SolverOption.valueOf(name.toUpperCase());
+				if(!options.contains(solver)){
+					options.add(solver);
+				}
+			}catch(IllegalArgumentException e){
+				throw new SteeringDataException("Unsupported solver: "+name);
+			}
+		}
+		if(options.isEmpty()){
+			throw new SteeringDataException("No solvers listed: "+names);
+		}
+		return new SolverPortfolio(options);
+	}
+
+	// Checks the model on every solver, and returns the first definitive result.
+	public JKindResult execute(final String model) throws Exception{
+		if(runners.size()==1){
+			JKindResult result = new JKindResult(model);
+			runners.get(0).execute(model, result, new NullProgressMonitor());
+			winner=solvers.get(0);
+			return result;
+		}
+
+		if(pool==null){
+			pool=Executors.newFixedThreadPool(runners.size(), new ThreadFactory(){
+				public Thread newThread(Runnable task){
+					Thread thread=new Thread(task, "solver portfolio");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		ExecutorCompletionService<Integer> completion=new ExecutorCompletionService<Integer>(pool);
+		final JKindResult[] results=new JKindResult[runners.size()];
+		final IProgressMonitor[] monitors=new IProgressMonitor[runners.size()];
+		for(int run=0;run<runners.size();run++){
+			monitors[run]=new CancelMonitor();
+		}
+		running=monitors;
+		for(int run=0;run<runners.size();run++){
+			final int current=run;
+			results[run]=new JKindResult(model);
+			completion.submit(new Callable<Integer>(){
+				public Integer call() throws Exception{
+					runners.get(current).execute(model, results[current], monitors[current]);
+					return current;
+				}
+			});
+		}
+
+		int answer=-1;
+		Exception failure=null;
+		try{
+			for(int finished=0;finished<runners.size();finished++){
+				int run;
+				try{
+					run=completion.take().get();
+				}catch(ExecutionException e){
+					if(e.getCause() instanceof Exception){
+						failure=(Exception)e.getCause();
+					}else{
+						failure=e;
+					}
+					continue;
+				}
+
+				if(answer==-1){
+					answer=run;
+				}
+				if(isDefinitive(results[run])){
+					answer=run;
+					break;
+				}
+			}
+		}finally{
+			// Stop the runs still going.
+			for(IProgressMonitor monitor: monitors){
+				monitor.setCanceled(true);
+			}
+		}
+
+		if(answer==-1){
+			throw failure;
+		}
+		winner=solvers.get(answer);
+		return results[answer];
+	}
+
+	// Progress monitor cancelled from another thread: jKind polls it while
+	// its process runs. (NullProgressMonitor's flag is not volatile.)
+	private static class CancelMonitor implements IProgressMonitor{
+		private volatile boolean canceled=false;
+
+		public void beginTask(String name, int totalWork){}
+		public void done(){}
+		public void internalWorked(double work){}
+		public boolean isCanceled(){
+			return canceled;
+		}
+		public void setCanceled(boolean value){
+			canceled=value;
+		}
+		public void setTaskName(String name){}
+		public void subTask(String name){}
+		public void worked(int work){}
+	}
+
+	// True if every property was proven valid or invalid.
+	private static boolean isDefinitive(JKindResult result){
+		List<PropertyResult> properties=result.getPropertyResults();
+		if(properties.isEmpty()){
+			return false;
+		}
+		for(PropertyResult pr: properties){
+			if(!(pr.getProperty() instanceof InvalidProperty) && !(pr.getProperty() instanceof ValidProperty)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Solver that gave the last answer.
+	public SolverOption getWinner(){
+		return winner;
+	}
+
+	public List<SolverOption> getSolvers(){
+		return solvers;
+	}
+
+	// Cancels any runs still going, and stops the worker threads.
+	public void close(){
+		if(running!=null){
+			for(IProgressMonitor monitor: running){
+				monitor.setCanceled(true);
+			}
+			running=null;
+		}
+		if(pool!=null){
+			pool.shutdownNow();
+			pool=null;
+		}
+	}
+}
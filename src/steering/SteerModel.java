@@ -2,7 +2,29 @@
 	Oracle Steering process for generic Lustre models
 
 	Gregory Gay (greg@greggay.com)
-	Last Updated: 06/18/2014
+	Last Updated: 10/18/2026
+		- Steering loop closes the z3 session and the solver portfolio in a finally block.
+		- Divergences read from the suite scan's scores (DivergenceScan.takeScores()), each test scored once.
+		- Direct matches run through counterexampleInputs() and applyInputs(), like the search.
+		- ladder= checks several threshold goals in one jKind run, one property each.
+		- solvers= lists the solvers jKind runs on, several race each other (first definitive answer wins).
+		- solver=z3inc checks the goals of a step in one z3 session, with push/pop.
+		- solver=z3opt finds the lowest score of a step in one call to z3's optimizer.
+		- Threshold search (search=, maxcalls=) replaces range cut and refinement, solver calls capped per step.
+		- Suite scanned for divergences in parallel first, queue=cost steers the costliest tests first.
+		- Tests checked for divergence by row hash first, scored only if they diverge.
+		- Steps scored incrementally (scoreStep), not by rescoring the whole test.
+		- prune=true keeps only the compared and input columns of the SUT trace.
+		- memory=<MB> bounds the decoded trace data, tests paged in and out.
+		- storage=encoded keeps traces dictionary/run-length encoded in memory.
+		- Compressed oracle traces give a compressed steered trace.
+		- steered= accepts a trace delta, output=delta writes one.
+		- Steered trace and log streamed per test, with checkpoints (checkpoint=<tests>).
+		- Steering loop reads trace records through views, not copies.
+		- Trace files read concurrently, tests in the suite decoded in parallel.
+		- Accepts binary (.trb) traces, writes a binary steered trace for them.
+		- Traces stored as TraceTables, read after the model is imported.
+	06/18/2014
 		- Storage added for soem data used in result checking.
 	06/17/2014
 		- Bug fix: score reading no longer freaks out at fractions
@@ -29,13 +51,14 @@ package steering;
 import interpreter.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.io.*;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 
-import org.eclipse.core.runtime.NullProgressMonitor;
 
-import jkind.SolverOption;
-import jkind.api.JKindApi;
 import jkind.api.results.JKindResult;
 import jkind.api.results.PropertyResult;
 import jkind.lustre.values.Value;
@@ -44,9 +67,9 @@ import jkind.results.*;
 public class SteerModel{
 	private WorkerFunctions worker;
 	private GetScores scorer;
-	private ArrayList<ArrayList<String>> oracleTrace;
-	private ArrayList<ArrayList<String>> sutTrace;
-	private ArrayList<ArrayList<String>> steeredTrace=null;
+	private TraceTable oracleTrace;
+	private TraceTable sutTrace;
+	private TraceTable steeredTrace=null;
 	private LustreModel model;
 	private ArrayList<String> oracleData;
 	private ArrayList<String> inputData;
@@ -57,8 +80,23 @@ public class SteerModel{
 	private String metric;
 	private String outFile;
 	private boolean offset=false;
+	// Tests steered between checkpoints of the output
+	private int checkpointInterval=1;
+	// Steer the tests in order of estimated cost, rather than suite order
+	private boolean costOrder=false;
+	// Threshold search mode, and most solver calls per step (direct match included)
+	private String searchMode="bisection";
+	private int maxCalls=10;
+	// Goals checked per solver call during the threshold search
+	private int ladder=1;
+	// Solver backend ("jkind", "z3inc" for a z3 session, or "z3opt" for z3's
+	// optimizer), and the z3 binary
+	private String solverBackend="jkind";
+	private String z3Path="z3";
+	// Solvers jKind runs on (comma-separated), raced against each other if several
+	private String solvers="z3";
 	// Only used for result checking, which piggybacks on steerer's functionality
-	private ArrayList<ArrayList<String>> unmutatedSUT;
+	private TraceTable unmutatedSUT;
 
 	// Constructor, takes in name of the config file.
 	// Reads in fields and initializes data variables
@@ -71,6 +109,14 @@ public class SteerModel{
 			String line ="";
 			String oFile="";
 			String sFile="";
+			// Traces are read once the model (and its type map) is known.
+			String oraclePath=null;
+			String sutPath=null;
+			String steeredPath=null;
+			String rutPath=null;
+			boolean deltaOutput=false;
+			boolean pruneColumns=false;
+			TraceMemory memory=null;
 
 			while((line=reader.readLine())!=null){
 				String[] parts=line.split("=");
@@ -81,30 +127,27 @@ public class SteerModel{
 				
 				if(parts[0].equals("oracle")){
 					if(parts.length==2){
-						oracleTrace=worker.readTraceFile(parts[1]);
-						if(steeredTrace==null){
-							steeredTrace=new ArrayList<ArrayList<String>>(oracleTrace);
-						}
+						oraclePath=parts[1];
 						oFile=parts[1].substring(parts[1].lastIndexOf("/")+1);
 					}else{
 						throw new SteeringDataException("No oracle trace imported.");
 					}
 				}else if(parts[0].equals("sut")){
 					if(parts.length==2){
-						sutTrace=worker.readTraceFile(parts[1]);
+						sutPath=parts[1];
 						sFile=parts[1].substring(parts[1].lastIndexOf("/")+1);
 					}else{
 						throw new SteeringDataException("No SUT trace imported.");
 					}
 				}else if(parts[0].equals("steered")){
 					if(parts.length==2){
-						steeredTrace=worker.readTraceFile(parts[1]);
+						steeredPath=parts[1];
 					}else{
 						throw new SteeringDataException("No steered trace imported.");
 					}
 				}else if(parts[0].equals("rut")){
 					if(parts.length==2){
-						unmutatedSUT=worker.readTraceFile(parts[1]);
+						rutPath=parts[1];
 					}else{
 						throw new SteeringDataException("No RUT trace imported.");
 					}
@@ -155,12 +198,134 @@ public class SteerModel{
 					if(parts.length==2){
 						normalization=worker.readNormFile(parts[1]);
 					}
+				}else if(parts[0].equals("output")){
+					// "delta" writes only the differences from the oracle trace
+					if(parts.length==2){
+						deltaOutput=parts[1].equals("delta");
+					}
+				}else if(parts[0].equals("prune")){
+					// "true" reads only the columns of the SUT trace that steering uses
+					if(parts.length==2){
+						pruneColumns=parts[1].equals("true");
+					}
+				}else if(parts[0].equals("memory")){
+					// Budget for decoded tests, in megabytes
+					if(parts.length==2){
+						memory=new TraceMemory(Long.parseLong(parts[1])<<20);
+					}
+				}else if(parts[0].equals("storage")){
+					// "encoded" keeps tests encoded in memory, "plain" as decoded arrays
+					if(parts.length==2){
+						worker.setEncoded(parts[1].equals("encoded"));
+					}
+				}else if(parts[0].equals("checkpoint")){
+					if(parts.length==2){
+						checkpointInterval=Integer.parseInt(parts[1]);
+					}
+				}else if(parts[0].equals("search")){
+					// "bisection", "golden" or "counterexample" (see ThresholdSearch)
+					if(parts.length==2){
+						ThresholdSearch.forName(parts[1]);
+						searchMode=parts[1];
+					}
+				}else if(parts[0].equals("maxcalls")){
+					if(parts.length==2){
+						maxCalls=Integer.parseInt(parts[1]);
+					}
+				}else if(parts[0].equals("ladder")){
+					// Goals per solver call, checked as separate properties of one model
+					if(parts.length==2){
+						ladder=Integer.parseInt(parts[1]);
+						if(ladder<1){
+							throw new SteeringDataException("Ladder needs at least one goal: "+parts[1]);
+						}
+					}
+				}else if(parts[0].equals("solver")){
+					// "jkind" checks goals one at a time, "z3inc" checks them in one z3 session,
+					// "z3opt" minimizes the score in one z3 call
+					if(parts.length==2){
+						if(!parts[1].equals("jkind") && !parts[1].equals("z3inc") && !parts[1].equals("z3opt")){
+							throw new SteeringDataException("Unsupported solver: "+parts[1]);
+						}
+						solverBackend=parts[1];
+					}
+				}else if(parts[0].equals("solvers")){
+					// Solvers for jKind, e.g. "z3,yices,cvc4": the first definitive answer is used
+					if(parts.length==2){
+						SolverPortfolio.forNames(parts[1]);
+						solvers=parts[1];
+					}
+				}else if(parts[0].equals("z3")){
+					// Path to the z3 binary
+					if(parts.length==2){
+						z3Path=parts[1];
+					}
+				}else if(parts[0].equals("queue")){
+					// "cost" steers the costliest tests first, "suite" in suite order
+					if(parts.length==2){
+						costOrder=parts[1].equals("cost");
+					}
 				}else{
 					throw new SteeringDataException("Invalid field in configuration file: "+parts[0]);
 				}
 			}
 			reader.close();
-			outFile=oFile+"_STEERED_"+sFile+"_trace.csv";
+			
+			// The four traces are read concurrently. A steered delta is
+			// applied over the oracle trace once that is read.
+			boolean steeredDelta=(steeredPath!=null && TraceDelta.isDelta(steeredPath));
+			// Only the oracle data and inputs of the SUT are ever read when steering.
+			// The oracle trace is kept whole, it becomes the steered trace.
+			ArrayList<Collection<String>> keep=null;
+			if(pruneColumns && oracleData!=null){
+				HashSet<String> sutColumns=new HashSet<String>(oracleData);
+				if(inputData!=null){
+					sutColumns.addAll(inputData);
+				}
+				keep=new ArrayList<Collection<String>>();
+				keep.add(null);
+				keep.add(sutColumns);
+				keep.add(null);
+				keep.add(null);
+			}
+			TraceTable[] traces=worker.readTraceFiles(new String[]{oraclePath, sutPath, rutPath, steeredDelta ? null : steeredPath}, keep);
+			oracleTrace=traces[0];
+			sutTrace=traces[1];
+			unmutatedSUT=traces[2];
+			if(steeredDelta){
+				steeredTrace=worker.readTraceDelta(steeredPath, oracleTrace);
+			}else if(traces[3]!=null){
+				steeredTrace=traces[3];
+			}else if(oracleTrace!=null){
+				steeredTrace=new TraceTable(oracleTrace);
+			}
+			// Under a memory budget, tests are read when needed and dropped when
+			// the budget runs out. Steered tests are dropped once written.
+			if(memory!=null){
+				for(TraceTable trace: new TraceTable[]{oracleTrace, sutTrace, unmutatedSUT, steeredTrace}){
+					if(trace!=null){
+						trace.setMemory(memory);
+					}
+				}
+			}else if(testSuite!=null){
+				// Otherwise, decode the tests that will be steered ahead of time, in parallel.
+				if(oracleTrace!=null){
+					oracleTrace.preload(testSuite);
+				}
+				if(sutTrace!=null){
+					sutTrace.preload(testSuite);
+				}
+			}
+			// Binary (or compressed) oracle traces give binary (or compressed) steered traces.
+			if(deltaOutput){
+				outFile=oFile+"_STEERED_"+sFile+"_trace"+TraceDelta.EXTENSION;
+			}else if(oraclePath!=null && BinaryTraceFile.isBinary(oraclePath)){
+				outFile=oFile+"_STEERED_"+sFile+"_trace"+BinaryTraceFile.EXTENSION;
+			}else if(oraclePath!=null && CompressedTraceFile.isGzip(oraclePath)){
+				outFile=oFile+"_STEERED_"+sFile+"_trace.csv"+CompressedTraceFile.EXTENSION;
+			}else{
+				outFile=oFile+"_STEERED_"+sFile+"_trace.csv";
+			}
 			
 		}catch(IOException e){
 			e.printStackTrace();
@@ -176,366 +341,232 @@ public class SteerModel{
 	// Steering loop
 	public void steer() throws Exception{
 		LustreInjection inject = new LustreInjection(this);
-		GetScores scorer = new GetScores(this);
+		GetScores scorer = this.getScorer();
 		LustreInterpreter interpreter;
-		JKindApi jkind = new JKindApi();
-		jkind.setN(1);
-		jkind.setSolver(SolverOption.Z3);
-		jkind.setBoundedModelChecking();
+		SolverPortfolio portfolio = this.getPortfolio();
+		Z3Optimizer optimizer = this.getOptimizer();
+		Z3Session session = this.getSession();
 		ArrayList<String> testLog = new ArrayList<String>();
 		
+		// Steered rows and log lines are written out as each test finishes.
+		// If an earlier run was interrupted, pick up where it stopped.
+		SteeringOutput output = new SteeringOutput(this.getOutfile(), "log.txt", this.getTestSuite(), this.getCheckpointInterval());
+		ArrayList<Integer> resumed = output.resume(this.getSteeredTrace());
+		if(!resumed.isEmpty()){
+			System.out.println("Resuming, tests already steered: "+resumed.size());
+		}
+		
 		// For each test in the test suite.
 		long start = System.nanoTime();
 		long end= System.nanoTime();
 		long allStart = System.nanoTime();
-		for(int test: this.getTestSuite()){
-			start= System.nanoTime();
-			
-			System.out.println("-----------------\nTest: "+test);
-			testLog.add("-----------------\nTest: "+test);
-			
-			ArrayList<String> oracleToScore=this.getWorker().extractRecords(this.getOracleTrace(), this.getOracleData(), test, -1);
-			ArrayList<String> sutToScore=this.getWorker().extractRecords(this.getSutTrace(), this.getOracleData(), test, -1);
-			
-			// Do we need to steer for this test?
-			ArrayList<Double> initScores = scorer.calculate(oracleToScore, sutToScore);
-			int where=-1;
-			int step=-1;
-			System.out.println("Divergences:");
-			testLog.add("Divergences:");
-			for(double score: initScores){
-				step++;
-				
-				if(score>0.0){
-					if(where==-1){
-						where=step;
-					}
-					
-					System.out.println("Step: "+step+", Score: "+score);
-					testLog.add("Step: "+step+", Score: "+score);
+		DivergenceScan scan = this.scanSuite(output);
+		try{
+			for(int test: this.getWorkOrder(scan)){
+				if(output.isComplete(test)){
+					continue;
 				}
-			}
-			
-			// If we need to steer
-			if(where!=-1){
-				System.out.println("Steering:");
-				testLog.add("Steering:");
-				// Get inputs for the test ready.
-				ArrayList<String> inputs = this.getWorker().extractRecords(this.getOracleTrace(), this.getInputData(), test, -1);
-				int steps=inputs.size();
 				
-				if(where>0){
-					where=where-1;
+				// Tests that never diverge go straight to the output, without
+				// being scored or steered.
+				if(!scan.isDivergent(test)){
+					output.finishTest(test, this.getSteeredTrace(), testLog);
+					continue;
 				}
+				start= System.nanoTime();
 				
-				// For each step from the step before divergence
-				for(step=where; step<steps-1;step++){
-					// If this is not the first step we have steered, run the interpreter and edit the trace.
-					if(step!=where-1 && step >0){
-						// Get inputs
-						ArrayList<String> inputsThisRound=new ArrayList<String>();
-						inputsThisRound.add(inputs.get(0));
-						inputsThisRound.add(inputs.get(step+1));
-						
-						// Inject the model to set the state;
-						ArrayList<String> oTrace = this.getWorker().extractRecords(this.getSteeredTrace(), null, test, step);
-						ArrayList<String> sTrace = this.getWorker().extractRecords(this.getSutTrace(), null, test, step);
-						ArrayList<String> iTrace = this.getWorker().extractRecords(this.getSteeredTrace(), null, test, step-1);
-						
-						String injectedModel = inject.inject(oTrace, sTrace, iTrace, 0.0);
-						inject.getInjectedModel().printToFile("injected.lus");
-						
-						// Run the interpreter
-						interpreter = new LustreInterpreter("injected.lus",inputsThisRound);
-						interpreter.setEqOrder(false);
-						ArrayList<String> record = interpreter.interpret();
-						// Edit the trace
-						this.setSteeredTrace(this.getWorker().editTrace(this.getSteeredTrace(),record.get(1),test,step));
-							
-						try{
-							File file=new File("injected.lus");
-							file.delete();
-						}catch(Exception e){
-							e.printStackTrace();
+				System.out.println("-----------------\nTest: "+test);
+				testLog.add("-----------------\nTest: "+test);
+				
+				// Do we need to steer for this test?
+				double[] initScores = scan.takeScores(test);
+				int where=-1;
+				int step=-1;
+				System.out.println("Divergences:");
+				testLog.add("Divergences:");
+				for(double score: initScores){
+					step++;
+					
+					if(score>0.0){
+						if(where==-1){
+							where=step;
 						}
+						
+						System.out.println("Step: "+step+", Score: "+score);
+						testLog.add("Step: "+step+", Score: "+score);
 					}
+				}
+				
+				// If we need to steer
+				if(where!=-1){
+					System.out.println("Steering:");
+					testLog.add("Steering:");
+					// Get inputs for the test ready.
+					ArrayList<String> inputs = this.getWorker().extractRecords(this.getOracleTrace(), this.getInputData(), test, -1);
+					int steps=inputs.size();
 					
-					// Get score for this round
-					oracleToScore=this.getWorker().extractRecords(this.getSteeredTrace(), this.getOracleData(), test, -1);
-					double score=scorer.calculate(oracleToScore, sutToScore).get(step);
-					System.out.println("Step: "+step+", Initial Score: "+score);
-					testLog.add("Step: "+step+", Initial Score: "+score);
+					if(where>0){
+						where=where-1;
+					}
 					
-					// If not = 0, we need to steer
-					if(score>0){
-						boolean done=false;
-						
-						// First, try a direct match.
-						System.out.println("Try to direct match:");
-						testLog.add("Try to direct match:");
-						
-						ArrayList<String> oTrace = this.getWorker().extractRecords(this.getSteeredTrace(), null, test, step);
-						ArrayList<String> sTrace = this.getWorker().extractRecords(this.getSutTrace(), null, test, step);
-						ArrayList<String> iTrace = this.getWorker().extractRecords(this.getSteeredTrace(), null, test, step-1);
-						
-						String injectedModel=inject.inject(oTrace, sTrace, iTrace, 0.0);
-						inject.getInjectedModel().printToFile("injected.lus");
-						JKindResult result = new JKindResult(injectedModel);
-						NullProgressMonitor monitor = new NullProgressMonitor();
-						jkind.execute(injectedModel, result, monitor);
-						
-						HashMap<String,String> newInputs=new HashMap<String,String>();
-						ArrayList<String> newI = new ArrayList<String>();
-						
-						for (PropertyResult pr : result.getPropertyResults()) {
-							System.out.println(pr.getName() + " - " + pr.getStatus());
-							testLog.add(pr.getName() + " - " + pr.getStatus());
-							if(pr.getProperty() instanceof InvalidProperty && pr.getName().equals("prop")){
-								done=true;
-								Counterexample ce=((InvalidProperty)pr.getProperty()).getCounterexample();
-
-								// If property is invalid, extract inputs from the counterexample
-								for(Signal<Value> variable: ce.getSignals()){
-									if(this.getInputData().contains(variable.getName())){
-										String value= variable.getValue(0).toString();
-										if(value.equals("true")){
-											value="1";
-										}else if(value.equals("false")){
-											value="0";
-										}else if(value.contains("/")){
-											String[] parts = value.split("/");
-											value= Double.toString(Double.parseDouble(parts[0])/Double.parseDouble(parts[1]));
-										}
-										
-										newInputs.put(variable.getName(),value);
-									}
-								}
-								
-								// Construct an input array for the interpreter
-								String vars="";
-								String vals="";
-								for(String var: this.getInputData()){
-									vars=vars+var+",";
-									vals=vals+newInputs.get(var)+",";
-								}
-								newI.add(vars.substring(0,vars.length()-1));
-								newI.add(vals.substring(0,vals.length()-1));
-								System.out.println(inputs.get(step+1));
-								testLog.add(inputs.get(step+1));
-								inputs.set(step+1, newI.get(1));
-								System.out.println(inputs.get(step+1));
-								testLog.add(inputs.get(step+1));
-								
-								// Run the interpreter
-								interpreter = new LustreInterpreter("injected.lus",newI);
-								interpreter.setEqOrder(false);
-								if(this.getVariableListFile()!=null){
-									interpreter.setOracleData(this.getVariableListFile());
-								}
-								ArrayList<String> newRecord = interpreter.interpret();
-								this.setSteeredTrace(this.getWorker().editTrace(this.getSteeredTrace(),newRecord.get(1),test,step));
+					// For each step from the step before divergence
+					for(step=where; step<steps-1;step++){
+						// If this is not the first step we have steered, run the interpreter and edit the trace.
+						if(step!=where-1 && step >0){
+							// Get inputs
+							ArrayList<String> inputsThisRound=new ArrayList<String>();
+							inputsThisRound.add(inputs.get(0));
+							inputsThisRound.add(inputs.get(step+1));
+							
+							// Inject the model to set the state;
+							List<String> oTrace = this.getWorker().viewRecords(this.getSteeredTrace(), null, test, step);
+							List<String> sTrace = this.getWorker().viewRecords(this.getSutTrace(), null, test, step);
+							List<String> iTrace = this.getWorker().viewRecords(this.getSteeredTrace(), null, test, step-1);
+							
+							String injectedModel = inject.inject(oTrace, sTrace, iTrace, 0.0);
+							inject.getInjectedModel().printToFile("injected.lus");
+							
+							// Run the interpreter
+							interpreter = new LustreInterpreter("injected.lus",inputsThisRound);
+							interpreter.setEqOrder(false);
+							ArrayList<String> record = interpreter.interpret();
+							// Edit the trace
+							this.setSteeredTrace(this.getWorker().editTrace(this.getSteeredTrace(),record.get(1),test,step));
 								
-								try{
-									File file=new File("injected.lus");
-									file.delete();
-								}catch(Exception e){
-									e.printStackTrace();
-								}
+							try{
+								File file=new File("injected.lus");
+								file.delete();
+							}catch(Exception e){
+								e.printStackTrace();
 							}
 						}
 						
-						if(!done){
-							// If we can't match, try to cut down the score range.
-							double threshold = 1;
-							double newScore=score;
-							double oldScore=score;
+						// Get score for this round
+						double score=scorer.scoreStep(test, step);
+						System.out.println("Step: "+step+", Initial Score: "+score);
+						testLog.add("Step: "+step+", Initial Score: "+score);
+						
+						// If not = 0, we need to steer
+						if(score>0){
+							boolean done=false;
 							
-							while((threshold >= 0.125) && !done){
-								threshold=threshold/2;
-								oldScore=newScore;
-								newScore=score*threshold;
-								System.out.println("Range Cut, Threshold: "+threshold+", New Score: "+newScore);
-								testLog.add("Range Cut, Threshold: "+threshold+", New Score: "+newScore);
+							HashMap<String,String> newInputs=null;
+							if(optimizer!=null){
+								// One call to the optimizer finds the lowest score within the
+								// tolerances, a direct match included.
+								newInputs=this.minimizeStep(optimizer, inject, test, step, score, testLog);
+								if(newInputs!=null){
+									this.applyInputs(newInputs, inputs, test, step, testLog);
+								}
+								done=true;
+							}else if(session!=null){
+								// The direct match and the threshold search, as checks in
+								// one z3 session.
+								newInputs=this.searchSession(session, inject, test, step, score, testLog);
+								if(newInputs!=null){
+									this.applyInputs(newInputs, inputs, test, step, testLog);
+								}
+								done=true;
+							}else{
+								// First, try a direct match.
+								System.out.println("Try to direct match:");
+								testLog.add("Try to direct match:");
 								
-								oTrace = this.getWorker().extractRecords(this.getSteeredTrace(), null, test, step);
-								sTrace = this.getWorker().extractRecords(this.getSutTrace(), null, test, step);
-								iTrace = this.getWorker().extractRecords(this.getSteeredTrace(), null, test, step-1);
+								List<String> oTrace = this.getWorker().viewRecords(this.getSteeredTrace(), null, test, step);
+								List<String> sTrace = this.getWorker().viewRecords(this.getSutTrace(), null, test, step);
+								List<String> iTrace = this.getWorker().viewRecords(this.getSteeredTrace(), null, test, step-1);
 								
-								injectedModel=inject.updateGoal(newScore);
+								String injectedModel=inject.inject(oTrace, sTrace, iTrace, 0.0);
 								inject.getInjectedModel().printToFile("injected.lus");
-								result = new JKindResult(injectedModel);
-								monitor = new NullProgressMonitor();
-								jkind.execute(injectedModel, result, monitor);
+								JKindResult result = portfolio.execute(injectedModel);
 								
 								for (PropertyResult pr : result.getPropertyResults()) {
 									System.out.println(pr.getName() + " - " + pr.getStatus());
 									testLog.add(pr.getName() + " - " + pr.getStatus());
-									if((pr.getProperty() instanceof UnknownProperty || pr.getProperty() instanceof ValidProperty) && pr.getName().equals("prop")){
-										score=oldScore;
+									if(pr.getProperty() instanceof InvalidProperty && pr.getName().equals("prop")){
 										done=true;
-									}else if(pr.getProperty() instanceof InvalidProperty && pr.getName().equals("prop") && (threshold <= 0.125)){
-										score=newScore;
+										Counterexample ce=((InvalidProperty)pr.getProperty()).getCounterexample();
+
+										// If property is invalid, run the counterexample's inputs and edit the trace.
+										newInputs=this.counterexampleInputs(ce);
+										this.applyInputs(newInputs, inputs, test, step, testLog);
 									}
 								}
 							}
 							
-							newInputs=null;
-							newI = null;
-							done=false;
-							
-							// Now, within the remaining range
-							while(!done){
-								System.out.println("Refinement, Goal: "+score);
-								testLog.add("Refinement, Goal: "+score);
-								oTrace = this.getWorker().extractRecords(this.getSteeredTrace(), null, test, step);
-								sTrace = this.getWorker().extractRecords(this.getSutTrace(), null, test, step);
-								iTrace = this.getWorker().extractRecords(this.getSteeredTrace(), null, test, step-1);
+							if(!done){
+								// If we can't match, search for the lowest score the solver
+								// can reach, within the call limit (see ThresholdSearch).
+								newInputs=this.searchThreshold(portfolio, inject, score, testLog);
 								
-								injectedModel=inject.updateGoal(score);
-								inject.getInjectedModel().printToFile("injected.lus");
-								result = new JKindResult(injectedModel);
-								monitor = new NullProgressMonitor();
-								jkind.execute(injectedModel, result, monitor);
-								
-								for (PropertyResult pr : result.getPropertyResults()) {
-									System.out.println(pr.getName() + " - " + pr.getStatus());
-									testLog.add(pr.getName() + " - " + pr.getStatus());
-									// If we get an "unknown" or "valid", stop trying to steer.
-									if((pr.getProperty() instanceof UnknownProperty || pr.getProperty() instanceof ValidProperty) && pr.getName().equals("prop")){
-										done=true;
-										
-										// If we previously had a counterexample, run that and edit the trace.
-										if(newInputs!=null){
-											// Construct an input array for the interpreter
-											String vars="";
-											String vals="";
-											for(String var: this.getInputData()){
-												vars=vars+var+",";
-												vals=vals+newInputs.get(var)+",";
-											}
-											newI = new ArrayList<String>();
-											newI.add(vars.substring(0,vars.length()-1));
-											newI.add(vals.substring(0,vals.length()-1));
-											
-											System.out.println(inputs.get(step+1));
-											testLog.add(inputs.get(step+1));
-											inputs.set(step+1, newI.get(1));
-											System.out.println(inputs.get(step+1));
-											testLog.add(inputs.get(step+1));
-											
-											// Run the interpreter
-											interpreter = new LustreInterpreter("injected.lus",newI);
-											interpreter.setEqOrder(false);
-											if(this.getVariableListFile()!=null){
-												interpreter.setOracleData(this.getVariableListFile());
-											}
-											ArrayList<String> newRecord = interpreter.interpret();
-											this.setSteeredTrace(this.getWorker().editTrace(this.getSteeredTrace(),newRecord.get(1),test,step));
-											
-											try{
-												File file=new File("injected.lus");
-												file.delete();
-											}catch(Exception e){
-												e.printStackTrace();
-											}
-										}
-									// If we get an "invalid", extract the inputs.
-									}else if(pr.getProperty() instanceof InvalidProperty && pr.getName().equals("prop")){
-										Counterexample ce=((InvalidProperty)pr.getProperty()).getCounterexample();
-										newInputs=new HashMap<String,String>();
-
-										// If property is invalid, extract inputs from the counterexample
-										for(Signal<Value> variable: ce.getSignals()){
-											if(this.getInputData().contains(variable.getName())){
-												String value= variable.getValue(0).toString();
-												if(value.equals("true")){
-													value="1";
-												}else if(value.equals("false")){
-													value="0";
-												}else if(value.equals("null")){
-													value="0";
-												}else if(value.contains("/")){
-													String[] parts = value.split("/");
-													value= Double.toString(Double.parseDouble(parts[0])/Double.parseDouble(parts[1]));
-												}
-												
-												newInputs.put(variable.getName(),value);
-											}else if(variable.getName().equals("score_steered")){
-												String value= variable.getValue(0).toString();
-
-												if(value.contains("/")){
-													String[] parts = value.split("/");
-													value= Double.toString((Double.parseDouble(parts[0])/Double.parseDouble(parts[1]))-0.001); // small epsilon to get around rounding issues
-												}
-
-												score=Double.parseDouble(value);
-												
-												if(score<0){
-													score=0;
-												}
-											}
-										}
-									}
+								// If a counterexample was found, run the best one and edit the trace.
+								if(newInputs!=null){
+									this.applyInputs(newInputs, inputs, test, step, testLog);
 								}
 							}
-						}
 
-						// Do we need to continue to steer?
-						// Note - Pacemaker *does* need to continue to steer
-						/*
-						this.getModel().printToFile("temp.lus");
-						interpreter = new LustreInterpreter("temp.lus",inputs);
-						interpreter.setEqOrder(false);
-						ArrayList<ArrayList<String>> records=new ArrayList<ArrayList<String>>();
-						records.add(interpreter.interpret());
-						
-						try{
-							File file=new File("temp.lus");
-							file.delete();
-						}catch(Exception e){
-							e.printStackTrace();
-						}
-						
-						oracleToScore=this.getWorker().extractRecords(records, this.getOracleData(), 0, -1);
-						initScores = scorer.calculate(oracleToScore, sutToScore);
-						boolean cont=false;
-						int scoreStep=-1;
-						for(double nScore: initScores){
-							scoreStep++;
+							// Do we need to continue to steer?
+							// Note - Pacemaker *does* need to continue to steer
+							/*
+							this.getModel().printToFile("temp.lus");
+							interpreter = new LustreInterpreter("temp.lus",inputs);
+							interpreter.setEqOrder(false);
+							ArrayList<ArrayList<String>> records=new ArrayList<ArrayList<String>>();
+							records.add(interpreter.interpret());
 							
-							if(nScore>0.0 && scoreStep > step){
-								cont=true;
+							try{
+								File file=new File("temp.lus");
+								file.delete();
+							}catch(Exception e){
+								e.printStackTrace();
 							}
+							
+							oracleToScore=this.getWorker().extractRecords(records, this.getOracleData(), 0, -1);
+							initScores = scorer.calculate(oracleToScore, sutToScore);
+							boolean cont=false;
+							int scoreStep=-1;
+							for(double nScore: initScores){
+								scoreStep++;
+								
+								if(nScore>0.0 && scoreStep > step){
+									cont=true;
+								}
+							}
+							
+							if(!cont){
+								break;
+							}*/
+							
 						}
-						
-						if(!cont){
-							break;
-						}*/
-						
 					}
+					
 				}
 				
-			}
-			
-			oracleToScore=worker.extractRecords(this.getSteeredTrace(), this.getOracleData(), test, -1);
-			sutToScore=worker.extractRecords(this.getSutTrace(), this.getOracleData(), test, -1);
-			
-			initScores = scorer.calculate(oracleToScore, sutToScore);
-			System.out.println("Remaining Divergences:");
-			testLog.add("Remaining Divergences:");
-			step=-1;
-			for(double score: initScores){
-				step++;
-				
-				if(score>0.0){
-					System.out.println("Step: "+step+", Score: "+score);
-					testLog.add("Step: "+step+", Score: "+score);
+				initScores = scorer.score(this.getSteeredTrace(), this.getSutTrace(), this.getOracleData(), test);
+				System.out.println("Remaining Divergences:");
+				testLog.add("Remaining Divergences:");
+				step=-1;
+				for(double score: initScores){
+					step++;
+					
+					if(score>0.0){
+						System.out.println("Step: "+step+", Score: "+score);
+						testLog.add("Step: "+step+", Score: "+score);
+					}
 				}
+				
+				end=System.nanoTime();
+				System.out.println("Time: "+(end-start));
+				testLog.add("Time: "+(end-start));
+				output.finishTest(test, this.getSteeredTrace(), testLog);
 			}
-			
-			end=System.nanoTime();
-			System.out.println("Time: "+(end-start));
-			testLog.add("Time: "+(end-start));
+		}finally{
+			// Stop z3 and any jKind runs even if steering fails, not to leave
+			// them running.
+			if(session!=null){
+				session.close();
+			}
+			portfolio.close();
 		}
 		
 		end=System.nanoTime();
@@ -543,43 +574,314 @@ public class SteerModel{
 		testLog.add("Time for Suite: "+(end-allStart));
 		
 		//When done, write steered trace to file.
-		this.getWorker().writeTraceToFile(this.getSteeredTrace(),this.getOutfile());
+		output.log(testLog);
+		output.close(this.getWorker(), this.getSteeredTrace());
+	}
+
+	// The optimizer, if solver=z3opt. Otherwise null.
+	public Z3Optimizer getOptimizer(){
+		if(solverBackend.equals("z3opt")){
+			return new Z3Optimizer(z3Path);
+		}
+		return null;
+	}
+	
+	// jKind runs on the configured solvers.
+	public SolverPortfolio getPortfolio() throws SteeringDataException{
+		return SolverPortfolio.forNames(solvers);
+	}
+	
+	// The z3 session, if solver=z3inc. Otherwise null.
+	public Z3Session getSession(){
+		if(solverBackend.equals("z3inc")){
+			return new Z3Session(z3Path);
+		}
+		return null;
+	}
+	
+	// Injects the step once, then checks a direct match and the goals of the
+	// threshold search in the z3 session. Returns the inputs of the best
+	// state found, or null if none was.
+	protected HashMap<String,String> searchSession(Z3Session session, LustreInjection inject, int test, int step, double score, ArrayList<String> testLog) throws Exception{
+		System.out.println("Try to direct match:");
+		testLog.add("Try to direct match:");
+		
+		List<String> oTrace = this.getWorker().viewRecords(this.getSteeredTrace(), null, test, step);
+		List<String> sTrace = this.getWorker().viewRecords(this.getSutTrace(), null, test, step);
+		List<String> iTrace = this.getWorker().viewRecords(this.getSteeredTrace(), null, test, step-1);
+		
+		// The goal is released by the encoding, and asserted per check.
+		inject.inject(oTrace, sTrace, iTrace, score);
+		inject.getInjectedModel().printToFile("injected.lus");
+		session.openStep("injected.lus", this.getInputData());
 		
-		// Write test log to file
 		try{
-			FileWriter writer = new FileWriter(new File("log.txt"));
-			for(String entry: testLog){
-				writer.write(entry+"\n");
+			String status=session.checkMatch();
+			System.out.println("prop - "+status);
+			testLog.add("prop - "+status);
+			if(status.equals("sat")){
+				return session.getInputs();
 			}
-
-			writer.close();
-		}catch(IOException e){
+			
+			ThresholdSearch search = ThresholdSearch.forName(searchMode);
+			HashMap<String,String> best = null;
+			search.start(score, maxCalls-1);
+			double goal = search.nextGoal();
+			while(goal>=0.0){
+				System.out.println("Threshold Search ("+search.getName()+"), Goal: "+goal);
+				testLog.add("Threshold Search ("+search.getName()+"), Goal: "+goal);
+				
+				status=session.checkBelow(goal);
+				System.out.println("prop - "+status);
+				testLog.add("prop - "+status);
+				if(status.equals("sat")){
+					best=session.getInputs();
+					search.found(goal, session.getScore());
+				}else{
+					search.notFound(goal);
+				}
+				
+				goal = search.nextGoal();
+			}
+			
+			if(search.isCapped()){
+				System.out.println("Solver call limit reached, best score: "+search.getHigh());
+				testLog.add("Solver call limit reached, best score: "+search.getHigh());
+			}
+			
+			return best;
+		}finally{
+			session.closeStep();
+		}
+	}
+	
+	// Injects the step and has z3 minimize its score within the tolerances.
+	// Returns the inputs of the optimum, or null if it does not lower the score.
+	protected HashMap<String,String> minimizeStep(Z3Optimizer optimizer, LustreInjection inject, int test, int step, double score, ArrayList<String> testLog) throws Exception{
+		System.out.println("Optimize (z3):");
+		testLog.add("Optimize (z3):");
+		
+		List<String> oTrace = this.getWorker().viewRecords(this.getSteeredTrace(), null, test, step);
+		List<String> sTrace = this.getWorker().viewRecords(this.getSutTrace(), null, test, step);
+		List<String> iTrace = this.getWorker().viewRecords(this.getSteeredTrace(), null, test, step-1);
+		
+		// The goal is released by the encoding, any goal above 0 will do.
+		inject.inject(oTrace, sTrace, iTrace, score);
+		inject.getInjectedModel().printToFile("injected.lus");
+		HashMap<String,String> newInputs = optimizer.minimize("injected.lus", this.getInputData());
+		
+		System.out.println(optimizer.getStatus()+", Score: "+optimizer.getScore());
+		testLog.add(optimizer.getStatus()+", Score: "+optimizer.getScore());
+		if(newInputs==null || !(optimizer.getScore()<score)){
+			return null;
+		}
+		return newInputs;
+	}
+	
+	// Runs new inputs for a step through the interpreter (on injected.lus),
+	// and edits the steered trace with the result.
+	protected void applyInputs(HashMap<String,String> newInputs, ArrayList<String> inputs, int test, int step, ArrayList<String> testLog) throws Exception{
+		// Construct an input array for the interpreter
+		String vars="";
+		String vals="";
+		for(String var: this.getInputData()){
+			vars=vars+var+",";
+			vals=vals+newInputs.get(var)+",";
+		}
+		ArrayList<String> newI = new ArrayList<String>();
+		newI.add(vars.substring(0,vars.length()-1));
+		newI.add(vals.substring(0,vals.length()-1));
+		
+		System.out.println(inputs.get(step+1));
+		testLog.add(inputs.get(step+1));
+		inputs.set(step+1, newI.get(1));
+		System.out.println(inputs.get(step+1));
+		testLog.add(inputs.get(step+1));
+		
+		// Run the interpreter
+		LustreInterpreter interpreter = new LustreInterpreter("injected.lus",newI);
+		interpreter.setEqOrder(false);
+		if(this.getVariableListFile()!=null){
+			interpreter.setOracleData(this.getVariableListFile());
+		}
+		ArrayList<String> newRecord = interpreter.interpret();
+		this.setSteeredTrace(this.getWorker().editTrace(this.getSteeredTrace(),newRecord.get(1),test,step));
+		
+		try{
+			File file=new File("injected.lus");
+			file.delete();
+		}catch(Exception e){
 			e.printStackTrace();
 		}
 	}
-
+	
+	// Asks the solver for steered states scoring below goals chosen by the
+	// threshold search, until it is done or out of calls. Returns the inputs
+	// of the best counterexample found, or null if none was.
+	protected HashMap<String,String> searchThreshold(SolverPortfolio portfolio, LustreInjection inject, double score, ArrayList<String> testLog) throws Exception{
+		ThresholdSearch search = ThresholdSearch.forName(searchMode);
+		HashMap<String,String> best = null;
+		
+		// The direct match already took one call.
+		search.start(score, maxCalls-1);
+		double[] goals = search.nextGoals(ladder);
+		while(goals.length>0){
+			String goalList=""+goals[0];
+			for(int rung=1;rung<goals.length;rung++){
+				goalList=goalList+", "+goals[rung];
+			}
+			System.out.println("Threshold Search ("+search.getName()+"), "+(goals.length>1 ? "Goals: " : "Goal: ")+goalList);
+			testLog.add("Threshold Search ("+search.getName()+"), "+(goals.length>1 ? "Goals: " : "Goal: ")+goalList);
+			
+			// One run checks the whole ladder (see LustreInjection.updateGoals).
+			String injectedModel=inject.updateGoals(goals);
+			inject.getInjectedModel().printToFile("injected.lus");
+			JKindResult result = portfolio.execute(injectedModel);
+			
+			// An "unknown", "valid" or no verdict at all means nothing scores
+			// below that goal (NaN).
+			double[] scores = new double[goals.length];
+			Arrays.fill(scores, Double.NaN);
+			double lowest = Double.POSITIVE_INFINITY;
+			for (PropertyResult pr : result.getPropertyResults()) {
+				System.out.println(pr.getName() + " - " + pr.getStatus());
+				testLog.add(pr.getName() + " - " + pr.getStatus());
+				int rung=this.rungOf(pr.getName(), goals.length);
+				if(rung==-1){
+					continue;
+				}
+				
+				// If we get an "invalid", keep the inputs of the lowest score.
+				if(pr.getProperty() instanceof InvalidProperty){
+					Counterexample ce=((InvalidProperty)pr.getProperty()).getCounterexample();
+					scores[rung]=this.counterexampleScore(ce, goals[rung]);
+					if(scores[rung]<lowest){
+						lowest=scores[rung];
+						best=this.counterexampleInputs(ce);
+					}
+				}
+			}
+			search.answered(goals, scores);
+			
+			goals = search.nextGoals(ladder);
+		}
+		
+		if(search.isCapped()){
+			System.out.println("Solver call limit reached, best score: "+search.getHigh());
+			testLog.add("Solver call limit reached, best score: "+search.getHigh());
+		}
+		
+		return best;
+	}
+	
+	// Rung of the ladder a property checks: prop is the first goal, prop_<n>
+	// goal n. -1 for any other property.
+	protected int rungOf(String property, int rungs){
+		if(property.equals("prop")){
+			return 0;
+		}
+		if(property.startsWith("prop_")){
+			try{
+				int rung=Integer.parseInt(property.substring(5));
+				if(rung>0 && rung<rungs){
+					return rung;
+				}
+			}catch(NumberFormatException e){
+				return -1;
+			}
+		}
+		return -1;
+	}
+	
+	// Input values of a counterexample, as the interpreter reads them.
+	protected HashMap<String,String> counterexampleInputs(Counterexample ce){
+		HashMap<String,String> newInputs=new HashMap<String,String>();
+		
+		for(Signal<Value> variable: ce.getSignals()){
+			if(this.getInputData().contains(variable.getName())){
+				String value= variable.getValue(0).toString();
+				if(value.equals("true")){
+					value="1";
+				}else if(value.equals("false")){
+					value="0";
+				}else if(value.equals("null")){
+					value="0";
+				}else if(value.contains("/")){
+					String[] parts = value.split("/");
+					value= Double.toString(Double.parseDouble(parts[0])/Double.parseDouble(parts[1]));
+				}
+				
+				newInputs.put(variable.getName(),value);
+			}
+		}
+		
+		return newInputs;
+	}
+	
+	// score_steered of a counterexample (never below 0). The goal, if it is missing.
+	protected double counterexampleScore(Counterexample ce, double goal){
+		for(Signal<Value> variable: ce.getSignals()){
+			if(variable.getName().equals("score_steered")){
+				String value= variable.getValue(0).toString();
+				double score;
+				if(value.contains("/")){
+					String[] parts = value.split("/");
+					score=Double.parseDouble(parts[0])/Double.parseDouble(parts[1]);
+				}else{
+					score=Double.parseDouble(value);
+				}
+				
+				return Math.max(0.0,score);
+			}
+		}
+		
+		return goal;
+	}
+	
+	// Finds the first divergence of every test still to be steered, in parallel.
+	public DivergenceScan scanSuite(SteeringOutput output) throws Exception{
+		ArrayList<Integer> toSteer = new ArrayList<Integer>();
+		for(int test: this.getTestSuite()){
+			if(!output.isComplete(test)){
+				toSteer.add(test);
+			}
+		}
+		
+		DivergenceScan scan = new DivergenceScan(this.getScorer(), this.getOracleTrace(), this.getSutTrace(), this.getOracleData());
+		scan.scan(toSteer);
+		return scan;
+	}
+	
+	// Order the tests are steered in: the suite's, or costliest first (queue=cost).
+	public ArrayList<Integer> getWorkOrder(DivergenceScan scan){
+		if(costOrder){
+			return scan.getWorkOrder();
+		}
+		return this.getTestSuite();
+	}
+	
 	// Getter and setter methods
-	public void setOracleTrace(ArrayList<ArrayList<String>> ot){
+	public void setOracleTrace(TraceTable ot){
 		oracleTrace=ot;
 	}
 
-	public ArrayList<ArrayList<String>> getOracleTrace(){
+	public TraceTable getOracleTrace(){
 		return oracleTrace;
 	}
 
-	public void setSutTrace(ArrayList<ArrayList<String>> st){
+	public void setSutTrace(TraceTable st){
 		sutTrace=st;
 	}
 
-	public ArrayList<ArrayList<String>> getSutTrace(){
+	public TraceTable getSutTrace(){
 		return sutTrace;
 	}
 
-	public void setSteeredTrace(ArrayList<ArrayList<String>> st){
+	public void setSteeredTrace(TraceTable st){
 		steeredTrace=st;
 	}
 
-	public ArrayList<ArrayList<String>> getSteeredTrace(){
+	public TraceTable getSteeredTrace(){
 		return steeredTrace;
 	}
 
@@ -679,13 +981,77 @@ public class SteerModel{
 		return outFile;
 	}
 	
+	public void setCheckpointInterval(int tests){
+		checkpointInterval=tests;
+	}
+	
+	public int getCheckpointInterval(){
+		return checkpointInterval;
+	}
+	
+	public void setSearchMode(String mode){
+		searchMode=mode;
+	}
+	
+	public String getSearchMode(){
+		return searchMode;
+	}
+	
+	public void setMaxCalls(int calls){
+		maxCalls=calls;
+	}
+	
+	public int getMaxCalls(){
+		return maxCalls;
+	}
+	
+	public void setLadder(int rungs){
+		ladder=rungs;
+	}
+	
+	public int getLadder(){
+		return ladder;
+	}
+	
+	public void setSolverBackend(String backend){
+		solverBackend=backend;
+	}
+	
+	public String getSolverBackend(){
+		return solverBackend;
+	}
+	
+	public void setSolvers(String names){
+		solvers=names;
+	}
+	
+	public String getSolvers(){
+		return solvers;
+	}
+	
+	public void setZ3Path(String path){
+		z3Path=path;
+	}
+	
+	public String getZ3Path(){
+		return z3Path;
+	}
+	
+	public void setCostOrder(boolean byCost){
+		costOrder=byCost;
+	}
+	
+	public boolean isCostOrder(){
+		return costOrder;
+	}
+	
 	// Used for result checking, which piggybacks on steerer's capabilities
 	
-	public void setUnmutatedSUT(ArrayList<ArrayList<String>> st){
+	public void setUnmutatedSUT(TraceTable st){
 		unmutatedSUT=st;
 	}
 
-	public ArrayList<ArrayList<String>> getUnmutatedSUT(){
+	public TraceTable getUnmutatedSUT(){
 		return unmutatedSUT;
 	}
 	
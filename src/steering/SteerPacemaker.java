@@ -2,7 +2,20 @@
 	Oracle Steering process for the Pacemaker model
 
 	Gregory Gay (greg@greggay.com)
-	Last Updated: 08/13/2014:
+	Last Updated: 10/18/2026:
+		- Steering loop closes the z3 session and the solver portfolio in a finally block.
+		- Divergences read from the suite scan's scores (DivergenceScan.takeScores()), each test scored once.
+		- Direct matches run through counterexampleInputs() and applyInputs(), like the search.
+		- solvers= lists the solvers jKind runs on, several race each other (first definitive answer wins).
+		- solver=z3inc checks the goals of a step in one z3 session, with push/pop.
+		- solver=z3opt finds the lowest score of a step in one call to z3's optimizer.
+		- Threshold search (search=, maxcalls=) replaces range cut and refinement, solver calls capped per step.
+		- Suite scanned for divergences in parallel first, queue=cost steers the costliest tests first.
+		- Steps scored incrementally (scoreStep), not by rescoring the whole test.
+		- Steered trace and log streamed per test, resumes from a checkpoint.
+		- Steering loop reads trace records through views, not copies.
+		- Scores calculated directly from the TraceTables.
+	08/13/2014:
 		- Prevent score from dropping below 0
 	07/22/2014:
 		- Kicks out after 100 steps
@@ -28,24 +41,16 @@
 package steering;
 
 import interpreter.*;
-import jkind.SolverOption;
-import jkind.api.*;
 import jkind.api.results.JKindResult;
 import jkind.api.results.PropertyResult;
-import jkind.lustre.values.Value;
 import jkind.results.Counterexample;
 import jkind.results.InvalidProperty;
-import jkind.results.Signal;
-import jkind.results.UnknownProperty;
-import jkind.results.ValidProperty;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
-import org.eclipse.core.runtime.NullProgressMonitor;
 
 public class SteerPacemaker extends SteerModel{
 
@@ -64,365 +69,233 @@ public class SteerPacemaker extends SteerModel{
 	public void steer() throws Exception{
 		PacemakerWorker worker = (PacemakerWorker)this.getWorker();
 		LustreInjection inject = new LustreInjection(this);
-		GetScores scorer = new GetScores(this);
+		GetScores scorer = this.getScorer();
 		LustreInterpreter interpreter;
-		JKindApi jkind = new JKindApi();
-		jkind.setN(1);
-		jkind.setSolver(SolverOption.Z3);
-		jkind.setBoundedModelChecking();
+		SolverPortfolio portfolio = this.getPortfolio();
+		Z3Optimizer optimizer = this.getOptimizer();
+		Z3Session session = this.getSession();
 		ArrayList<String> testLog = new ArrayList<String>();
 		
+		// Steered rows and log lines are written out as each test finishes.
+		// If an earlier run was interrupted, pick up where it stopped.
+		SteeringOutput output = new SteeringOutput(this.getOutfile(), "log.txt", this.getTestSuite(), this.getCheckpointInterval());
+		ArrayList<Integer> resumed = output.resume(this.getSteeredTrace());
+		if(!resumed.isEmpty()){
+			System.out.println("Resuming, tests already steered: "+resumed.size());
+		}
+		
 		// For each test in the test suite.
 		long start = System.nanoTime();
 		long end= System.nanoTime();
 		long allStart = System.nanoTime();
-		for(int test: this.getTestSuite()){
-			start= System.nanoTime();
-			
-			System.out.println("-----------------\nTest: "+test);
-			testLog.add("-----------------\nTest: "+test);
-			
-			ArrayList<String> oracleToScore=worker.extractRecords(this.getOracleTrace(), this.getOracleData(), test, -1);
-			ArrayList<String> sutToScore=worker.extractRecords(this.getSutTrace(), this.getOracleData(), test, -1);
-			System.out.println("Initial test size: "+oracleToScore.size()+","+sutToScore.size());
-			testLog.add("Initial test size: "+oracleToScore.size()+","+sutToScore.size());
-			
-			// Do we need to steer for this test?
-			ArrayList<Double> initScores = scorer.calculate(oracleToScore, sutToScore);
-			int where=-1;
-			int step=-1;
-			System.out.println("Divergences:");
-			testLog.add("Divergences:");
-			for(double score: initScores){
-				step++;
-				
-				if(score>0.0){
-					if(where==-1){
-						where=step;
-					}
-					
-					System.out.println("Step: "+step+", Score: "+score);
-					testLog.add("Step: "+step+", Score: "+score);
+		DivergenceScan scan = this.scanSuite(output);
+		try{
+			for(int test: this.getWorkOrder(scan)){
+				if(output.isComplete(test)){
+					continue;
 				}
-			}
-			
-			// If we need to steer
-			if(where!=-1){
-				System.out.println("Steering:");
-				testLog.add("Steering:");
-				// Get inputs for the test ready.
-				ArrayList<String> inputs = worker.extractRecords(this.getOracleTrace(), this.getInputData(), test, -1);
+				start= System.nanoTime();
 				
-				// For Pacemaker: Filter for concrete senses.
-				step=where-1;
-				inputs=worker.clearBlanks(inputs,step);
-				//for(String in: inputs){
-				//	System.out.println(in);
-				//}
+				System.out.println("-----------------\nTest: "+test);
+				testLog.add("-----------------\nTest: "+test);
 				
-				int steps=inputs.size();
-				//System.out.println("Init steps, post cut:"+steps);
+				// Sizes include the header line
+				int oracleSize=this.getOracleTrace().getRowCount(test)+1;
+				int sutSize=this.getSutTrace().getRowCount(test)+1;
+				System.out.println("Initial test size: "+oracleSize+","+sutSize);
+				testLog.add("Initial test size: "+oracleSize+","+sutSize);
 				
-				// For each step from the step before divergence
-				if(where>0){
-					where=where-1;
-				}
-				
-				for(step=where; step<steps-1;step++){
-					//System.out.println("ds "+step);
-					// If this is not the first step we have steered, run the interpreter and edit the trace.
-					if(step!=where-1 && step >0){
-						// Get inputs
-						ArrayList<String> inputsThisRound=new ArrayList<String>();
-						inputsThisRound.add(inputs.get(0));
-						inputsThisRound.add(inputs.get(step+1));
-						//System.out.println("Inputs: "+inputs.get(step+1));
-						//System.out.println("SUT: "+worker.extractRecords(this.getSutTrace(), null, test, step).get(1));
-						
-						// Inject the model to set the state;
-						ArrayList<String> oTrace = worker.extractRecords(this.getSteeredTrace(), null, test, step);
-						ArrayList<String> sTrace = worker.extractRecords(this.getSutTrace(), null, test, step);
-						ArrayList<String> iTrace = worker.extractRecords(this.getSteeredTrace(), null, test, step-1);
-						
-						String injectedModel = inject.inject(oTrace, sTrace, iTrace, 0.0);
-						inject.getInjectedModel().printToFile("injected.lus");
-						
-						// Run the interpreter
-						interpreter = new LustreInterpreter("injected.lus",inputsThisRound);
-						interpreter.setEqOrder(false);
-						ArrayList<String> record = interpreter.interpret();
-						
-						// Edit the trace
-						this.setSteeredTrace(worker.editTrace(this.getSteeredTrace(),record.get(1),test,step));
-							
-						try{
-							File file=new File("injected.lus");
-							file.delete();
-						}catch(Exception e){
-							e.printStackTrace();
+				// Do we need to steer for this test? The scores also give the
+				// length the steered test is trimmed to, so are always needed.
+				double[] initScores = scan.takeScores(test);
+				int where=-1;
+				int step=-1;
+				System.out.println("Divergences:");
+				testLog.add("Divergences:");
+				for(double score: initScores){
+					step++;
+					
+					if(score>0.0){
+						if(where==-1){
+							where=step;
 						}
+						
+						System.out.println("Step: "+step+", Score: "+score);
+						testLog.add("Step: "+step+", Score: "+score);
 					}
+				}
+				
+				// If we need to steer
+				if(where!=-1){
+					System.out.println("Steering:");
+					testLog.add("Steering:");
+					// Get inputs for the test ready.
+					ArrayList<String> inputs = worker.extractRecords(this.getOracleTrace(), this.getInputData(), test, -1);
+					
+					// For Pacemaker: Filter for concrete senses.
+					step=where-1;
+					inputs=worker.clearBlanks(inputs,step);
+					//for(String in: inputs){
+					//	System.out.println(in);
+					//}
 					
-					// Get score for this round
-					oracleToScore=worker.extractRecords(this.getSteeredTrace(), this.getOracleData(), test, -1);
-					double score=scorer.calculate(oracleToScore, sutToScore).get(step);
-					System.out.println("Step: "+step+", Initial Score: "+score);
-					testLog.add("Step: "+step+", Initial Score: "+score);
+					int steps=inputs.size();
+					//System.out.println("Init steps, post cut:"+steps);
 					
-					// If not = 0, we need to steer
-					if(score>0){
-						boolean done=false;
-						
-						// First, try a direct match.
-						System.out.println("Try to direct match:");
-						testLog.add("Try to direct match:");
-						
-						ArrayList<String> oTrace = worker.extractRecords(this.getSteeredTrace(), null, test, step);
-						ArrayList<String> sTrace = worker.extractRecords(this.getSutTrace(), null, test, step);
-						ArrayList<String> iTrace = worker.extractRecords(this.getSteeredTrace(), null, test, step-1);
-						
-						String injectedModel=inject.inject(oTrace, sTrace, iTrace, 0.0);
-						inject.getInjectedModel().printToFile("injected.lus");
-						JKindResult result = new JKindResult(injectedModel);
-						NullProgressMonitor monitor = new NullProgressMonitor();
-						jkind.execute(injectedModel, result, monitor);
-						
-						HashMap<String,String> newInputs=new HashMap<String,String>();
-						ArrayList<String> newI = new ArrayList<String>();
-						
-						for (PropertyResult pr : result.getPropertyResults()) {
-							System.out.println(pr.getName() + " - " + pr.getStatus());
-							testLog.add(pr.getName() + " - " + pr.getStatus());
-							if(pr.getProperty() instanceof InvalidProperty && pr.getName().equals("prop")){
-								done=true;
-								Counterexample ce=((InvalidProperty)pr.getProperty()).getCounterexample();
-
-								// If property is invalid, extract inputs from the counterexample
-								for(Signal<Value> variable: ce.getSignals()){
-									if(this.getInputData().contains(variable.getName())){
-										String value= variable.getValue(0).toString();
-										if(value.equals("true")){
-											value="1";
-										}else if(value.equals("false")){
-											value="0";
-										}else if(value.contains("/")){
-											String[] parts = value.split("/");
-											value= Double.toString(Double.parseDouble(parts[0])/Double.parseDouble(parts[1]));
-										}
-										
-										newInputs.put(variable.getName(),value);
-									}
-								}
-								
-								// Construct an input array for the interpreter
-								String vars="";
-								String vals="";
-								for(String var: this.getInputData()){
-									vars=vars+var+",";
-									vals=vals+newInputs.get(var)+",";
-								}
-								newI.add(vars.substring(0,vars.length()-1));
-								newI.add(vals.substring(0,vals.length()-1));
-								System.out.println(inputs.get(step+1));
-								testLog.add(inputs.get(step+1));
-								inputs.set(step+1, newI.get(1));
-								System.out.println(inputs.get(step+1));
-								testLog.add(inputs.get(step+1));
-								
-								// Run the interpreter
-								interpreter = new LustreInterpreter("injected.lus",newI);
-								interpreter.setEqOrder(false);
-								if(this.getVariableListFile()!=null){
-									interpreter.setOracleData(this.getVariableListFile());
-								}
-								ArrayList<String> newRecord = interpreter.interpret();
-								this.setSteeredTrace(worker.editTrace(this.getSteeredTrace(),newRecord.get(1),test,step));
+					// For each step from the step before divergence
+					if(where>0){
+						where=where-1;
+					}
+					
+					for(step=where; step<steps-1;step++){
+						//System.out.println("ds "+step);
+						// If this is not the first step we have steered, run the interpreter and edit the trace.
+						if(step!=where-1 && step >0){
+							// Get inputs
+							ArrayList<String> inputsThisRound=new ArrayList<String>();
+							inputsThisRound.add(inputs.get(0));
+							inputsThisRound.add(inputs.get(step+1));
+							//System.out.println("Inputs: "+inputs.get(step+1));
+							//System.out.println("SUT: "+worker.extractRecords(this.getSutTrace(), null, test, step).get(1));
+							
+							// Inject the model to set the state;
+							List<String> oTrace = worker.viewRecords(this.getSteeredTrace(), null, test, step);
+							List<String> sTrace = worker.viewRecords(this.getSutTrace(), null, test, step);
+							List<String> iTrace = worker.viewRecords(this.getSteeredTrace(), null, test, step-1);
+							
+							String injectedModel = inject.inject(oTrace, sTrace, iTrace, 0.0);
+							inject.getInjectedModel().printToFile("injected.lus");
+							
+							// Run the interpreter
+							interpreter = new LustreInterpreter("injected.lus",inputsThisRound);
+							interpreter.setEqOrder(false);
+							ArrayList<String> record = interpreter.interpret();
+							
+							// Edit the trace
+							this.setSteeredTrace(worker.editTrace(this.getSteeredTrace(),record.get(1),test,step));
 								
-								try{
-									File file=new File("injected.lus");
-									file.delete();
-								}catch(Exception e){
-									e.printStackTrace();
-								}
+							try{
+								File file=new File("injected.lus");
+								file.delete();
+							}catch(Exception e){
+								e.printStackTrace();
 							}
 						}
 						
-						if(!done){
-							// If we can't match, try to cut down the score range.
-							double threshold = 1;
-							double newScore=score;
-							double oldScore=score;
+						// Get score for this round
+						double score=scorer.scoreStep(test, step);
+						System.out.println("Step: "+step+", Initial Score: "+score);
+						testLog.add("Step: "+step+", Initial Score: "+score);
+						
+						// If not = 0, we need to steer
+						if(score>0){
+							boolean done=false;
 							
-							while((threshold >= 0.125) && !done){
-								threshold=threshold/2;
-								oldScore=newScore;
-								newScore=score*threshold;
-								System.out.println("Range Cut, Threshold: "+threshold+", New Score: "+newScore);
-								testLog.add("Range Cut, Threshold: "+threshold+", New Score: "+newScore);
+							HashMap<String,String> newInputs=null;
+							if(optimizer!=null){
+								// One call to the optimizer finds the lowest score within the
+								// tolerances, a direct match included.
+								newInputs=this.minimizeStep(optimizer, inject, test, step, score, testLog);
+								if(newInputs!=null){
+									this.applyInputs(newInputs, inputs, test, step, testLog);
+								}
+								done=true;
+							}else if(session!=null){
+								// The direct match and the threshold search, as checks in
+								// one z3 session.
+								newInputs=this.searchSession(session, inject, test, step, score, testLog);
+								if(newInputs!=null){
+									this.applyInputs(newInputs, inputs, test, step, testLog);
+								}
+								done=true;
+							}else{
+								// First, try a direct match.
+								System.out.println("Try to direct match:");
+								testLog.add("Try to direct match:");
 								
-								oTrace = worker.extractRecords(this.getSteeredTrace(), null, test, step);
-								sTrace = worker.extractRecords(this.getSutTrace(), null, test, step);
-								iTrace = worker.extractRecords(this.getSteeredTrace(), null, test, step-1);
+								List<String> oTrace = worker.viewRecords(this.getSteeredTrace(), null, test, step);
+								List<String> sTrace = worker.viewRecords(this.getSutTrace(), null, test, step);
+								List<String> iTrace = worker.viewRecords(this.getSteeredTrace(), null, test, step-1);
 								
-								injectedModel=inject.updateGoal(newScore);
+								String injectedModel=inject.inject(oTrace, sTrace, iTrace, 0.0);
 								inject.getInjectedModel().printToFile("injected.lus");
-								result = new JKindResult(injectedModel);
-								monitor = new NullProgressMonitor();
-								jkind.execute(injectedModel, result, monitor);
+								JKindResult result = portfolio.execute(injectedModel);
 								
 								for (PropertyResult pr : result.getPropertyResults()) {
 									System.out.println(pr.getName() + " - " + pr.getStatus());
 									testLog.add(pr.getName() + " - " + pr.getStatus());
-									if((pr.getProperty() instanceof UnknownProperty || pr.getProperty() instanceof ValidProperty) && pr.getName().equals("prop")){
-										score=oldScore;
+									if(pr.getProperty() instanceof InvalidProperty && pr.getName().equals("prop")){
 										done=true;
-									}else if(pr.getProperty() instanceof InvalidProperty && pr.getName().equals("prop") && (threshold <= 0.125)){
-										score=newScore;
+										Counterexample ce=((InvalidProperty)pr.getProperty()).getCounterexample();
+
+										// If property is invalid, run the counterexample's inputs and edit the trace.
+										newInputs=this.counterexampleInputs(ce);
+										this.applyInputs(newInputs, inputs, test, step, testLog);
 									}
 								}
 							}
 							
-							newInputs=null;
-							newI = null;
-							done=false;
-							
-							// Now, within the remaining range
-							while(!done){
-								System.out.println("Refinement, Goal: "+score);
-								testLog.add("Refinement, Goal: "+score);
-								oTrace = worker.extractRecords(this.getSteeredTrace(), null, test, step);
-								sTrace = worker.extractRecords(this.getSutTrace(), null, test, step);
-								iTrace = worker.extractRecords(this.getSteeredTrace(), null, test, step-1);
+							if(!done){
+								// If we can't match, search for the lowest score the solver
+								// can reach, within the call limit (see ThresholdSearch).
+								newInputs=this.searchThreshold(portfolio, inject, score, testLog);
 								
-								injectedModel=inject.updateGoal(score);
-								inject.getInjectedModel().printToFile("injected.lus");
-								result = new JKindResult(injectedModel);
-								monitor = new NullProgressMonitor();
-								jkind.execute(injectedModel, result, monitor);
-								
-								for (PropertyResult pr : result.getPropertyResults()) {
-									System.out.println(pr.getName() + " - " + pr.getStatus());
-									testLog.add(pr.getName() + " - " + pr.getStatus());
-									// If we get an "unknown" or "valid", stop trying to steer.
-									if((pr.getProperty() instanceof UnknownProperty || pr.getProperty() instanceof ValidProperty) && pr.getName().equals("prop")){
-										done=true;
-										
-										// If we previously had a counterexample, run that and edit the trace.
-										if(newInputs!=null){
-											// Construct an input array for the interpreter
-											String vars="";
-											String vals="";
-											for(String var: this.getInputData()){
-												vars=vars+var+",";
-												vals=vals+newInputs.get(var)+",";
-											}
-											newI = new ArrayList<String>();
-											newI.add(vars.substring(0,vars.length()-1));
-											newI.add(vals.substring(0,vals.length()-1));
-											
-											System.out.println(inputs.get(step+1));
-											testLog.add(inputs.get(step+1));
-											inputs.set(step+1, newI.get(1));
-											System.out.println(inputs.get(step+1));
-											testLog.add(inputs.get(step+1));
-											
-											// Run the 
-											interpreter = new LustreInterpreter("injected.lus",newI);
-											interpreter.setEqOrder(false);
-											if(this.getVariableListFile()!=null){
-												interpreter.setOracleData(this.getVariableListFile());
-											}
-											ArrayList<String> newRecord = interpreter.interpret();
-											this.setSteeredTrace(worker.editTrace(this.getSteeredTrace(),newRecord.get(1),test,step));
-											
-											try{
-												File file=new File("injected.lus");
-												file.delete();
-											}catch(Exception e){
-												e.printStackTrace();
-											}
-										}
-									// If we get an "invalid", extract the inputs.
-									}else if(pr.getProperty() instanceof InvalidProperty && pr.getName().equals("prop")){
-										Counterexample ce=((InvalidProperty)pr.getProperty()).getCounterexample();
-										newInputs=new HashMap<String,String>();
-
-										// If property is invalid, extract inputs from the counterexample
-										for(Signal<Value> variable: ce.getSignals()){
-											if(this.getInputData().contains(variable.getName())){
-												String value= variable.getValue(0).toString();
-												if(value.equals("true")){
-													value="1";
-												}else if(value.equals("false")){
-													value="0";
-												}else if(value.equals("null")){
-													value="0";
-												}else if(value.contains("/")){
-													String[] parts = value.split("/");
-													value= Double.toString(Double.parseDouble(parts[0])/Double.parseDouble(parts[1]));
-												}
-												newInputs.put(variable.getName(),value);
-											}else if(variable.getName().equals("score_steered")){
-												String value= variable.getValue(0).toString();
-												
-												if(value.contains("/")){
-													String[] parts = value.split("/");
-													value= Double.toString((Double.parseDouble(parts[0])/Double.parseDouble(parts[1]))-0.001); // small epsilon to get around rounding issues
-												}
-												
-												score=Double.parseDouble(value);
-												
-												if(score<0){
-													score=0;
-												}
-											}
-										}
-									}
+								// If a counterexample was found, run the best one and edit the trace.
+								if(newInputs!=null){
+									this.applyInputs(newInputs, inputs, test, step, testLog);
 								}
 							}
 						}
+						
+						// pacemaker: insert step check
+						inputs=worker.insertNoEvent(inputs, worker.extractRecords(this.getSteeredTrace(), null, test, -1), "0,0,0,2,120,150,0,50,50,75,0,150,0,50,0,0,2,1000", step);
+						steps=inputs.size();
+						//System.out.println(steps);
+						//if(step+2<inputs.size()){
+						//	System.out.println(step+": "+inputs.get(step+1)+"\n"+(step+1)+": "+inputs.get(step+2));
+						//}
+						
+						if(steps>100){
+							steps=100;
+						}
 					}
+				}
+				
+				// Remove any extraneous steps in steered trace (i.e., trace is now shorter)
+				if(step<this.getSteeredTrace().getRowCount(test)){
+					this.setSteeredTrace(worker.removeRecords(this.getSteeredTrace(),test,step));
+				}
+				
+				oracleSize=this.getSteeredTrace().getRowCount(test)+1;
+				sutSize=this.getSutTrace().getRowCount(test)+1;
+				System.out.println("----------------\nFinal test size: "+oracleSize+","+sutSize);
+				testLog.add("----------------\nFinal test size: "+oracleSize+","+sutSize);
+				
+				initScores = scorer.score(this.getSteeredTrace(), this.getSutTrace(), this.getOracleData(), test);
+				System.out.println("Remaining Divergences:");
+				testLog.add("Remaining Divergences:");
+				step=-1;
+				for(double score: initScores){
+					step++;
 					
-					// pacemaker: insert step check
-					inputs=worker.insertNoEvent(inputs, worker.extractRecords(this.getSteeredTrace(), null, test, -1), "0,0,0,2,120,150,0,50,50,75,0,150,0,50,0,0,2,1000", step);
-					steps=inputs.size();
-					//System.out.println(steps);
-					//if(step+2<inputs.size()){
-					//	System.out.println(step+": "+inputs.get(step+1)+"\n"+(step+1)+": "+inputs.get(step+2));
-					//}
-					
-					if(steps>100){
-						steps=100;
+					if(score>0.0){
+						System.out.println("Step: "+step+", Score: "+score);
+						testLog.add("Step: "+step+", Score: "+score);
 					}
 				}
-			}
-			
-			// Remove any extraneous steps in steered trace (i.e., trace is now shorter)
-			if(step<this.getSteeredTrace().get(test).size()-1){
-				this.setSteeredTrace(worker.removeRecords(this.getSteeredTrace(),test,step));
-			}
-			
-			oracleToScore=worker.extractRecords(this.getSteeredTrace(), this.getOracleData(), test, -1);
-			sutToScore=worker.extractRecords(this.getSutTrace(), this.getOracleData(), test, -1);
-			System.out.println("----------------\nFinal test size: "+oracleToScore.size()+","+sutToScore.size());
-			testLog.add("----------------\nFinal test size: "+oracleToScore.size()+","+sutToScore.size());
-			
-			initScores = scorer.calculate(oracleToScore, sutToScore);
-			System.out.println("Remaining Divergences:");
-			testLog.add("Remaining Divergences:");
-			step=-1;
-			for(double score: initScores){
-				step++;
 				
-				if(score>0.0){
-					System.out.println("Step: "+step+", Score: "+score);
-					testLog.add("Step: "+step+", Score: "+score);
-				}
+				end=System.nanoTime();
+				System.out.println("Time: "+(end-start));
+				testLog.add("Time: "+(end-start));
+				output.finishTest(test, this.getSteeredTrace(), testLog);
+			}
+		}finally{
+			// Stop z3 and any jKind runs even if steering fails, not to leave
+			// them running.
+			if(session!=null){
+				session.close();
 			}
-			
-			end=System.nanoTime();
-			System.out.println("Time: "+(end-start));
-			testLog.add("Time: "+(end-start));
+			portfolio.close();
 		}
 		
 		end=System.nanoTime();
@@ -430,19 +303,8 @@ public class SteerPacemaker extends SteerModel{
 		testLog.add("Time for Suite: "+(end-allStart));
 		
 		//When done, write steered trace to file.
-		worker.writeTraceToFile(this.getSteeredTrace(),this.getOutfile());
-		
-		// Write test log to file
-		try{
-			FileWriter writer = new FileWriter(new File("log.txt"));
-			for(String entry: testLog){
-				writer.write(entry+"\n");
-			}
-			
-			writer.close();
-		}catch(IOException e){
-			e.printStackTrace();
-		}
+		output.log(testLog);
+		output.close(worker, this.getSteeredTrace());
 		
 	}
 }
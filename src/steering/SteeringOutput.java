@@ -0,0 +1,394 @@
+/*	SteeringOutput
+	Streams the steered trace and the test log to disk as steering runs,
+	with checkpoints to resume an interrupted run.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Steered rows of each finished test appended to a journal.
+		- Log lines of each finished test appended to the log file.
+		- Checkpoint of completed tests written every few tests.
+		- Resumes from the last checkpoint.
+		- Journal readable as a TraceSource, so written tests can be dropped
+		  from memory (under a memory budget) and read back when needed.
+
+	README:
+		- Files, next to the steered trace <out>:
+			<out>.journal: for each finished test, "test <id> <rows>" then its rows.
+			<out>.ckpt: the suite, the tests completed, and how much of the
+			  journal and log they take up.
+		- A checkpoint is only written once the journal and log are flushed.
+		  On resume, anything written after the last checkpoint is cut off and
+		  those tests are steered again.
+		- A checkpoint for a different test suite is ignored.
+		- When the suite is done, the full steered trace is written to <out>
+		  and the journal and checkpoint are removed.
+		- If the steered trace has a memory budget, each finished test is
+		  spilled to the journal, and the final trace is assembled from the
+		  journal and the oracle trace one test at a time.
+*/
+
+package steering;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+public class SteeringOutput implements TraceSource {
+
+	public static final String JOURNAL=".journal";
+	public static final String CHECKPOINT=".ckpt";
+
+	private String traceFile;
+	private Path journalPath;
+	private Path checkpointPath;
+	private ArrayList<Integer> suite;
+	// Tests finished between checkpoints
+	private int interval;
+	private int sinceCheckpoint=0;
+
+	private FileChannel journalChannel;
+	private FileChannel logChannel;
+	private Writer journal;
+	private Writer log;
+	// Tests finished (and written), in order
+	private ArrayList<Integer> completed=new ArrayList<Integer>();
+	private HashSet<Integer> completedSet=new HashSet<Integer>();
+	// Where the rows of each test start and end in the journal, and how many there are
+	private HashMap<Integer,long[]> journalIndex=new HashMap<Integer,long[]>();
+	// Bytes written to the journal so far (ISO-8859-1, one byte a character)
+	private long journalEnd;
+	private String header="";
+
+	// Opens the journal and log. If a checkpoint for the same suite exists,
+	// both files are cut back to it, ready for resume(). Otherwise they start empty.
+	public SteeringOutput(String trace, String logFile, ArrayList<Integer> tests, int checkpointInterval) throws IOException{
+		traceFile=trace;
+		journalPath=Paths.get(trace+JOURNAL);
+		checkpointPath=Paths.get(trace+CHECKPOINT);
+		suite=tests;
+		interval=Math.max(checkpointInterval,1);
+
+		long journalLength=0;
+		long logLength=0;
+		long[] lengths=this.readCheckpoint();
+		if(lengths!=null && Files.exists(journalPath) && Files.exists(Paths.get(logFile))){
+			journalLength=lengths[0];
+			logLength=lengths[1];
+		}else{
+			completed.clear();
+			completedSet.clear();
+		}
+
+		journalEnd=journalLength;
+		journalChannel=this.openAt(journalPath,journalLength);
+		logChannel=this.openAt(Paths.get(logFile),logLength);
+		journal=new BufferedWriter(Channels.newWriter(journalChannel,StandardCharsets.ISO_8859_1.newEncoder(),-1),1<<16);
+		log=new BufferedWriter(Channels.newWriter(logChannel,StandardCharsets.ISO_8859_1.newEncoder(),-1),1<<16);
+	}
+
+	// Opens a file for writing, cut to the given length, positioned at its end.
+	private FileChannel openAt(Path file, long length) throws IOException{
+		FileChannel channel=FileChannel.open(file,StandardOpenOption.CREATE,StandardOpenOption.WRITE);
+		channel.truncate(length);
+		channel.position(length);
+		return channel;
+	}
+
+	// Reads the checkpoint. Returns the journal and log lengths, or null if
+	// there is no checkpoint for this suite.
+	private long[] readCheckpoint(){
+		if(!Files.exists(checkpointPath)){
+			return null;
+		}
+
+		long[] lengths=new long[2];
+		String storedSuite=null;
+		try{
+			BufferedReader reader=Files.newBufferedReader(checkpointPath,StandardCharsets.ISO_8859_1);
+			try{
+				String line;
+				while((line=reader.readLine())!=null){
+					String[] parts=line.split("=");
+					String value="";
+					if(parts.length==2){
+						value=parts[1];
+					}
+
+					if(parts[0].equals("suite")){
+						storedSuite=value;
+					}else if(parts[0].equals("journal")){
+						lengths[0]=Long.parseLong(value);
+					}else if(parts[0].equals("log")){
+						lengths[1]=Long.parseLong(value);
+					}else if(parts[0].equals("done") && !value.equals("")){
+						for(String test: value.split(",")){
+							completed.add(Integer.parseInt(test));
+						}
+					}
+				}
+			}finally{
+				reader.close();
+			}
+		}catch(IOException | NumberFormatException e){
+			System.out.println("Could not read checkpoint, starting over: "+checkpointPath);
+			completed.clear();
+			return null;
+		}
+
+		if(!this.join(suite).equals(storedSuite)){
+			completed.clear();
+			return null;
+		}
+
+		completedSet.addAll(completed);
+		return lengths;
+	}
+
+	// Loads the steered rows of the tests completed before a restart back
+	// into the steered trace. Returns the tests restored. Under a memory
+	// budget, the tests are only marked as spilled, and read when needed.
+	public ArrayList<Integer> resume(TraceTable steered) throws IOException{
+		header=steered.getHeaderLine();
+		if(completed.isEmpty()){
+			return completed;
+		}
+
+		boolean spill=(steered.getMemory()!=null);
+		long offset=0;
+		BufferedReader reader=new BufferedReader(Channels.newReader(FileChannel.open(journalPath,StandardOpenOption.READ),StandardCharsets.ISO_8859_1.newDecoder(),-1));
+		try{
+			String line;
+			while((line=reader.readLine())!=null){
+				offset+=line.length()+1;
+				String[] parts=line.split(" ");
+				if(parts.length!=3 || !parts[0].equals("test")){
+					throw new IOException("Corrupt steering journal: "+journalPath);
+				}
+				int test=Integer.parseInt(parts[1]);
+				int rows=Integer.parseInt(parts[2]);
+				long start=offset;
+
+				TraceBlock block=null;
+				if(!spill){
+					block=new TraceBlock(steered.getTypes(),rows);
+				}
+				for(int row=0;row<rows;row++){
+					line=reader.readLine();
+					offset+=line.length()+1;
+					if(block!=null){
+						block.appendRow(line);
+					}
+				}
+				journalIndex.put(test,new long[]{start,offset,rows});
+				if(spill){
+					steered.spill(test,this);
+				}else{
+					steered.setTest(test,block);
+				}
+			}
+		}finally{
+			reader.close();
+		}
+
+		return completed;
+	}
+
+	public boolean isComplete(int test){
+		return completedSet.contains(test);
+	}
+
+	// Writes out a finished test: its steered rows to the journal and its log
+	// block to the log. The log list is emptied. Checkpoints every few tests.
+	// Under a memory budget, the test is then spilled to the journal.
+	public void finishTest(int test, TraceTable steered, List<String> testLog) throws IOException{
+		int rows=steered.getRowCount(test);
+		TraceBlock block=steered.getTest(test);
+		header=steered.getHeaderLine();
+
+		synchronized(this){
+			String line="test "+test+" "+rows+"\n";
+			journal.write(line);
+			journalEnd+=line.length();
+			long start=journalEnd;
+			for(int row=0;row<rows;row++){
+				line=block.getRow(row);
+				journal.write(line);
+				journal.write('\n');
+				journalEnd+=line.length()+1;
+			}
+			journalIndex.put(test,new long[]{start,journalEnd,rows});
+		}
+		this.log(testLog);
+		if(steered.getMemory()!=null){
+			steered.spill(test,this);
+		}
+
+		completed.add(test);
+		completedSet.add(test);
+		sinceCheckpoint++;
+		if(sinceCheckpoint>=interval){
+			this.checkpoint();
+		}
+	}
+
+	// Appends lines to the log, emptying the list.
+	public void log(List<String> lines) throws IOException{
+		for(String entry: lines){
+			log.write(entry);
+			log.write('\n');
+		}
+		lines.clear();
+	}
+
+	// Flushes both files to disk, then records the completed tests.
+	// The checkpoint is written to a temporary file and moved into place.
+	public void checkpoint() throws IOException{
+		synchronized(this){
+			journal.flush();
+		}
+		log.flush();
+		journalChannel.force(false);
+		logChannel.force(false);
+
+		Path temp=Paths.get(traceFile+CHECKPOINT+".tmp");
+		BufferedWriter writer=Files.newBufferedWriter(temp,StandardCharsets.ISO_8859_1);
+		try{
+			writer.write("suite="+this.join(suite)+"\n");
+			writer.write("journal="+journalChannel.position()+"\n");
+			writer.write("log="+logChannel.position()+"\n");
+			writer.write("done="+this.join(completed)+"\n");
+		}finally{
+			writer.close();
+		}
+
+		try{
+			Files.move(temp,checkpointPath,StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+		}catch(AtomicMoveNotSupportedException e){
+			Files.move(temp,checkpointPath,StandardCopyOption.REPLACE_EXISTING);
+		}
+		sinceCheckpoint=0;
+	}
+
+	// Writes the full steered trace, closes the log and removes the journal
+	// and checkpoint.
+	public void close(WorkerFunctions worker, TraceTable steered) throws Exception{
+		worker.writeTraceToFile(steered,traceFile);
+
+		journal.close();
+		log.close();
+		Files.deleteIfExists(checkpointPath);
+		Files.deleteIfExists(journalPath);
+	}
+
+	// Journal as a trace source, for tests spilled to it.
+
+	public String getFilename(){
+		return journalPath.toString();
+	}
+
+	public String getHeader(){
+		return header;
+	}
+
+	public int getColumnType(int col){
+		return TraceTable.STRING;
+	}
+
+	public synchronized int getTestCount(){
+		int count=0;
+		for(int test: journalIndex.keySet()){
+			count=Math.max(count,test+1);
+		}
+		return count;
+	}
+
+	public synchronized int getRowCount(int test){
+		long[] entry=journalIndex.get(test);
+		if(entry==null){
+			return 0;
+		}
+		return (int)entry[2];
+	}
+
+	// Reads the rows of a test back from the journal. Rows still buffered
+	// are flushed first.
+	public TraceBlock readTest(int test, int[] types, int[] fields){
+		long start;
+		long end;
+		int rows;
+
+		synchronized(this){
+			long[] entry=journalIndex.get(test);
+			if(entry==null){
+				throw new IllegalArgumentException("Test not in the steering journal: "+test);
+			}
+			start=entry[0];
+			end=entry[1];
+			rows=(int)entry[2];
+			try{
+				journal.flush();
+			}catch(IOException e){
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		ByteBuffer bytes=ByteBuffer.allocate((int)(end-start));
+		try{
+			FileChannel channel=FileChannel.open(journalPath,StandardOpenOption.READ);
+			try{
+				while(bytes.hasRemaining()){
+					if(channel.read(bytes,start+bytes.position())==-1){
+						break;
+					}
+				}
+			}finally{
+				channel.close();
+			}
+		}catch(IOException e){
+			throw new UncheckedIOException(e);
+		}
+
+		String text=new String(bytes.array(),0,bytes.position(),StandardCharsets.ISO_8859_1);
+		TraceBlock block=new TraceBlock(types,rows);
+		int begin=0;
+		for(int row=0;row<rows;row++){
+			int newline=text.indexOf('\n',begin);
+			block.appendRow(text.substring(begin,newline),fields);
+			begin=newline+1;
+		}
+
+		return block;
+	}
+
+	private String join(List<Integer> tests){
+		StringBuilder list=new StringBuilder();
+
+		if(tests!=null){
+			for(int entry=0;entry<tests.size();entry++){
+				if(entry>0){
+					list.append(',');
+				}
+				list.append(tests.get(entry));
+			}
+		}
+
+		return list.toString();
+	}
+}
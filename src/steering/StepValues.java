@@ -0,0 +1,142 @@
+/*	StepValues
+	Values of one step of a trace, as the model's types see them.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Reads typed cells straight from a TraceRecords view.
+		- Falls back to decoding the text of any other record list.
+		- Reals written as plain decimals (realLiteral()), never with an exponent.
+
+	README:
+		- NaN reads as 0, as it always has for injection.
+		- Literals are written the way Lustre expects them: true/false for
+		  booleans, reals as plain decimals with a decimal point, ints and
+		  untyped values as is.
+		- A view over a missing step (the dummy row) reads as all zeroes.
+*/
+
+package steering;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+
+public class StepValues {
+
+	// Model type of each variable
+	private HashMap<String,String> typeMap;
+	// Typed cells, when the records are a view over a trace
+	private TraceRecords records;
+	private int row;
+	// Decoded text, for any other list of records
+	private HashMap<String,Integer> index;
+	private String[] values;
+
+	// Values of one entry of a record list (entry 0 is the header).
+	public StepValues(List<String> trace, int entry, HashMap<String,String> types){
+		typeMap=types;
+
+		if(trace instanceof TraceRecords){
+			records=(TraceRecords)trace;
+			row=records.getRow(entry);
+		}else{
+			String[] header=trace.get(0).split(",");
+			index=new HashMap<String,Integer>();
+			for(int col=0;col<header.length;col++){
+				if(!index.containsKey(header[col])){
+					index.put(header[col],col);
+				}
+			}
+			values=trace.get(entry).split(",",-1);
+		}
+	}
+
+	public boolean contains(String variable){
+		if(records!=null){
+			return records.getPlan().getEntry(variable)!=-1;
+		}
+		return index.containsKey(variable);
+	}
+
+	// Numeric value of a variable. Booleans are 1/0, NaN is 0.
+	public double getValue(String variable){
+		double value;
+
+		if(records!=null){
+			int col=this.columnOf(variable);
+			TraceBlock block=records.getBlock();
+			if(row==-1){
+				value=0.0;
+			}else if(block.getType(col)==TraceTable.STRING){
+				value=this.decode(variable,block.getString(row,col));
+			}else{
+				value=block.getDouble(row,col);
+			}
+		}else{
+			value=this.decode(variable,this.textOf(variable));
+		}
+
+		if(Double.isNaN(value)){
+			return 0.0;
+		}
+		return value;
+	}
+
+	// Value of a variable as a Lustre literal of its model type.
+	public String getLiteral(String variable){
+		switch(TraceTable.typeOf(typeMap.get(variable))){
+		case TraceTable.BOOL:
+			return this.getValue(variable)!=0.0 ? "true" : "false";
+		case TraceTable.INT:
+			return Integer.toString((int)this.getValue(variable));
+		case TraceTable.REAL:
+			return StepValues.realLiteral(this.getValue(variable));
+		default:
+			if(records!=null){
+				if(row==-1){
+					return "0";
+				}
+				return records.getBlock().getString(row,this.columnOf(variable));
+			}
+			return this.textOf(variable);
+		}
+	}
+
+	// Real as a Lustre literal: plain decimal, always with a decimal point
+	// (jKind does not read exponents, and 5 would read as an int).
+	public static String realLiteral(double value){
+		String literal=BigDecimal.valueOf(value).toPlainString();
+		if(literal.indexOf('.')==-1){
+			literal=literal+".0";
+		}
+		return literal;
+	}
+
+	private int columnOf(String variable){
+		int entry=records.getPlan().getEntry(variable);
+		if(entry==-1){
+			throw new IllegalArgumentException("Variable not in trace: "+variable);
+		}
+		return records.getPlan().getColumns()[entry];
+	}
+
+	private String textOf(String variable){
+		Integer col=index.get(variable);
+		if(col==null){
+			throw new IllegalArgumentException("Variable not in trace: "+variable);
+		}
+		if(col>=values.length){
+			return "";
+		}
+		return values[col];
+	}
+
+	// Decodes text by the variable's model type.
+	private double decode(String variable, String value){
+		if(TraceTable.typeOf(typeMap.get(variable))==TraceTable.BOOL){
+			return TraceBlock.parseBool(value) ? 1.0 : 0.0;
+		}
+		return TraceBlock.parseReal(value);
+	}
+}
@@ -0,0 +1,166 @@
+/*	ThresholdSearch
+	Chooses the score goals the solver is asked to beat, when a step cannot
+	be steered to a direct match.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Replaces the fixed range cut and epsilon refinement of the steering loops.
+		- Hard cap on solver calls per step.
+		- Ladders of goals, checked in one solver call (nextGoals()).
+
+	README:
+		- Modes (search= in the configuration file):
+			bisection: goal halfway between the bounds (the default).
+			golden: goal at the golden section nearer the lower bound.
+			counterexample: goal just under the best counterexample found,
+			  halfway between the bounds after a goal is not met.
+		- The search keeps two bounds: the highest goal the solver could not
+		  beat (no steered state scores below it, or unknown), and the lowest
+		  score_steered of any counterexample. It starts at 0 (a direct match
+		  failed) and the step's current score.
+		- It stops once the bounds are within PRECISION, or after the most
+		  solver calls it was given. The last counterexample found is the best.
+		- nextGoals() gives a ladder of goals for a call that checks several
+		  at once: the mode's goal, with the others spread evenly below and
+		  above it (bisection splits the range evenly instead). answered()
+		  takes the results of the whole ladder.
+*/
+
+package steering;
+
+public abstract class ThresholdSearch {
+
+	// Closest the bounds need to get (the epsilon refinement used to step by)
+	public static final double PRECISION=0.001;
+
+	// No steered state below this goal
+	protected double low;
+	// Lowest score found (the step's score, until a counterexample is found)
+	protected double high;
+	private int calls;
+	private int maxCalls;
+	private boolean found;
+
+	// Search named in the configuration file.
+	public static ThresholdSearch forName(String mode) throws SteeringDataException{
+		if(mode.equals("bisection")){
+			return new BisectionSearch();
+		}else if(mode.equals("golden")){
+			return new GoldenSectionSearch();
+		}else if(mode.equals("counterexample")){
+			return new CounterexampleSearch();
+		}
+		throw new SteeringDataException("Unsupported threshold search: "+mode);
+	}
+
+	// Starts the search for a step, allowed up to callLimit solver calls.
+	public void start(double score, int callLimit){
+		low=0.0;
+		high=score;
+		calls=0;
+		maxCalls=callLimit;
+		found=false;
+	}
+
+	// Next goal for the solver to beat, or -1 when the search is over.
+	public double nextGoal(){
+		if(calls>=maxCalls || high-low<=PRECISION){
+			return -1;
+		}
+		double goal=this.chooseGoal();
+		// Goals stay strictly between the bounds
+		if(goal<=low || goal>=high){
+			goal=(low+high)/2;
+		}
+		calls++;
+		return goal;
+	}
+
+	// Ladder of up to rungs goals for one solver call, lowest first. Empty
+	// when the search is over.
+	public double[] nextGoals(int rungs){
+		double goal=this.nextGoal();
+		if(goal<0.0){
+			return new double[0];
+		}
+		return this.chooseGoals(goal, rungs);
+	}
+	
+	// Ladder around the mode's goal: the other goals go below it and above
+	// it, in proportion to the room on each side, evenly spaced.
+	protected double[] chooseGoals(double goal, int rungs){
+		int below=(int)Math.round((rungs-1)*(goal-low)/(high-low));
+		int above=rungs-1-below;
+		double[] goals=new double[rungs];
+		for(int rung=0;rung<below;rung++){
+			goals[rung]=low+(goal-low)*(rung+1)/(below+1);
+		}
+		goals[below]=goal;
+		for(int rung=0;rung<above;rung++){
+			goals[below+1+rung]=goal+(high-goal)*(rung+1)/(above+1);
+		}
+		return goals;
+	}
+	
+	// Results of a ladder: scores[rung] is the score of the counterexample
+	// beating goals[rung], or NaN if the goal was not beaten.
+	public void answered(double[] goals, double[] scores){
+		double best=high;
+		for(int rung=0;rung<goals.length;rung++){
+			if(!Double.isNaN(scores[rung])){
+				best=Math.min(best,Math.min(goals[rung],scores[rung]));
+			}
+		}
+		
+		// A goal the solver could not beat, above a score it did reach, is
+		// an unknown rather than a bound.
+		for(int rung=0;rung<goals.length;rung++){
+			if(Double.isNaN(scores[rung]) && goals[rung]<best){
+				this.notFound(goals[rung]);
+			}
+		}
+		for(int rung=0;rung<goals.length;rung++){
+			if(!Double.isNaN(scores[rung])){
+				this.found(goals[rung],scores[rung]);
+			}
+		}
+	}
+	
+	// Goal between low and high, as the mode chooses it.
+	protected abstract double chooseGoal();
+
+	public abstract String getName();
+
+	// The solver found a steered state scoring score, under goal.
+	public void found(double goal, double score){
+		high=Math.max(low,Math.min(high,Math.min(goal,score)));
+		found=true;
+	}
+
+	// The solver could not beat goal (valid, or unknown).
+	public void notFound(double goal){
+		low=Math.max(low,goal);
+	}
+
+	public boolean hasFound(){
+		return found;
+	}
+
+	// True if the search stopped on its call limit, not its precision.
+	public boolean isCapped(){
+		return calls>=maxCalls && high-low>PRECISION;
+	}
+
+	public int getCalls(){
+		return calls;
+	}
+
+	public double getLow(){
+		return low;
+	}
+
+	public double getHigh(){
+		return high;
+	}
+}
@@ -0,0 +1,396 @@
+/*	TraceBlock
+	Typed column storage for the rows of a single test.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Decode CSV rows into boolean/int/double/String columns.
+		- Replace, append and truncate rows.
+		- Edited in place, with the rows changed since the last check kept.
+		- Rows can be decoded from a subset of the fields of each line.
+		- Estimate of the memory held by the columns.
+		- Reals written back out in plain decimal form (formatReal).
+
+	README:
+		- Row 0 is the first test step. The header is held by the TraceTable.
+		- Booleans are written back out as 1/0, as in the original traces.
+		  Reals are written without an exponent or trailing zeros (5 rather
+		  than 5.0, 0.0000001 rather than 1.0E-7).
+		- Replacing, appending and truncating a row is O(1) (amortized when
+		  the columns have to grow).
+*/
+
+package steering;
+
+import java.math.BigDecimal;
+import java.util.BitSet;
+
+public class TraceBlock {
+
+	// Column types, shared with the owning TraceTable
+	private int[] types;
+	// One array per column: boolean[], int[], double[] or String[]
+	private Object[] columns;
+	// Number of rows in use
+	private int rows;
+	// Rows replaced or appended since the last clearDirty()
+	protected BitSet dirty=new BitSet();
+
+	public TraceBlock(int[] colTypes, int capacity){
+		types=colTypes;
+		columns=new Object[types.length];
+		rows=0;
+
+		if(capacity<1){
+			capacity=1;
+		}
+
+		for(int col=0;col<types.length;col++){
+			columns[col]=newColumn(types[col],capacity);
+		}
+	}
+
+	// Copy constructor, used when a trace needs its own version of a test.
+	// The copy starts with no dirty rows.
+	public TraceBlock(TraceBlock other){
+		types=other.types;
+		columns=new Object[types.length];
+		rows=other.getRowCount();
+
+		for(int col=0;col<types.length;col++){
+			columns[col]=copyColumn(types[col],other.getColumn(col),Math.max(rows,1));
+		}
+	}
+
+	// Number of rows (test steps) in this block.
+	public int getRowCount(){
+		return rows;
+	}
+
+	public int getColumnCount(){
+		return types.length;
+	}
+
+	public int getType(int col){
+		return types[col];
+	}
+
+	public int[] getTypes(){
+		return types;
+	}
+
+	// Raw column array. Callers must not read past getRowCount().
+	public Object getColumn(int col){
+		return columns[col];
+	}
+
+	// Numeric view of a cell. Booleans are 1.0/0.0.
+	public double getDouble(int row, int col){
+		switch(types[col]){
+		case TraceTable.BOOL:
+			return ((boolean[])columns[col])[row] ? 1.0 : 0.0;
+		case TraceTable.INT:
+			return ((int[])columns[col])[row];
+		case TraceTable.REAL:
+			return ((double[])columns[col])[row];
+		default:
+			return parseReal(((String[])columns[col])[row]);
+		}
+	}
+
+	// Text view of a cell, in trace file format.
+	public String getString(int row, int col){
+		switch(types[col]){
+		case TraceTable.BOOL:
+			return ((boolean[])columns[col])[row] ? "1" : "0";
+		case TraceTable.INT:
+			return Integer.toString(((int[])columns[col])[row]);
+		case TraceTable.REAL:
+			return formatReal(((double[])columns[col])[row]);
+		default:
+			return ((String[])columns[col])[row];
+		}
+	}
+
+	// Renders a whole row as a comma-separated line.
+	public String getRow(int row){
+		StringBuilder line=new StringBuilder();
+
+		for(int col=0;col<types.length;col++){
+			if(col>0){
+				line.append(',');
+			}
+			line.append(this.getString(row,col));
+		}
+
+		return line.toString();
+	}
+
+	// Replaces a row with a decoded line, and marks it dirty.
+	public void setRow(int row, String line){
+		this.fillRow(row,line);
+		dirty.set(row);
+	}
+
+	// Decodes a comma-separated line into the given row.
+	private void fillRow(int row, String line){
+		this.fillRow(row,line,null);
+	}
+
+	// As above, taking the value of each column from the given field of the
+	// line (fields in increasing order). Other fields are skipped without
+	// being decoded. Null takes every field.
+	private void fillRow(int row, String line, int[] fields){
+		int begin=0;
+		int field=0;
+
+		for(int col=0;col<types.length;col++){
+			String value="";
+
+			if(fields!=null){
+				while(field<fields[col] && begin<=line.length()){
+					int end=line.indexOf(',',begin);
+					if(end==-1){
+						end=line.length();
+					}
+					begin=end+1;
+					field++;
+				}
+			}
+
+			if(begin<=line.length()){
+				int end=line.indexOf(',',begin);
+				if(end==-1){
+					end=line.length();
+				}
+				value=line.substring(begin,end);
+				begin=end+1;
+			}
+			field++;
+
+			this.setValue(row,col,value);
+		}
+	}
+
+	// Adds a decoded line to the end of the block. Used when loading, the
+	// row is not marked dirty.
+	public void appendRow(String line){
+		this.appendRow(line,null);
+	}
+
+	// As above, decoding only the given fields of the line (see fillRow).
+	public void appendRow(String line, int[] fields){
+		this.ensureCapacity(rows+1);
+		rows++;
+		this.fillRow(rows-1,line,fields);
+	}
+
+	// Adds a line to the end of the block as an edit, marking it dirty.
+	public void appendEdit(String line){
+		this.appendRow(line);
+		dirty.set(rows-1);
+	}
+
+	// Sets the number of rows in use, growing the columns if needed.
+	// New rows hold default values until written.
+	public void setRowCount(int newSize){
+		this.ensureCapacity(newSize);
+		rows=newSize;
+	}
+
+	// Drops every row from newSize onwards.
+	public void truncate(int newSize){
+		if(newSize<rows){
+			rows=newSize;
+			dirty.clear(newSize,Math.max(newSize,dirty.length()));
+		}
+	}
+
+	// Rows edited since the last clearDirty(). Truncated rows are not included,
+	// compare against getRowCount() to spot them.
+	public BitSet getDirtyRows(){
+		return dirty;
+	}
+
+	public boolean isDirty(int row){
+		return dirty.get(row);
+	}
+
+	public void clearDirty(){
+		dirty.clear();
+	}
+
+	// Decodes a single value into a cell.
+	public void setValue(int row, int col, String value){
+		switch(types[col]){
+		case TraceTable.BOOL:
+			((boolean[])columns[col])[row]=parseBool(value);
+			break;
+		case TraceTable.INT:
+			((int[])columns[col])[row]=parseInt(value);
+			break;
+		case TraceTable.REAL:
+			((double[])columns[col])[row]=parseReal(value);
+			break;
+		default:
+			((String[])columns[col])[row]=value;
+		}
+	}
+
+	// Copies a row of another block (with the same column types) into a row
+	// of this one, without going through text.
+	public void copyRow(TraceBlock from, int fromRow, int row){
+		for(int col=0;col<types.length;col++){
+			switch(types[col]){
+			case TraceTable.BOOL:
+				((boolean[])columns[col])[row]=from.getDouble(fromRow,col)!=0.0;
+				break;
+			case TraceTable.INT:
+				((int[])columns[col])[row]=(int)from.getDouble(fromRow,col);
+				break;
+			case TraceTable.REAL:
+				((double[])columns[col])[row]=from.getDouble(fromRow,col);
+				break;
+			default:
+				((String[])columns[col])[row]=from.getString(fromRow,col);
+			}
+		}
+	}
+
+	// Rough number of bytes held by the columns, for memory budgeting.
+	// Strings are counted at their length plus object overhead.
+	public long estimateSize(){
+		long size=16+8L*types.length;
+		int capacity=this.capacity();
+		if(capacity==Integer.MAX_VALUE){
+			return size;
+		}
+
+		for(int col=0;col<types.length;col++){
+			switch(types[col]){
+			case TraceTable.BOOL:
+				size+=capacity;
+				break;
+			case TraceTable.INT:
+				size+=4L*capacity;
+				break;
+			case TraceTable.REAL:
+				size+=8L*capacity;
+				break;
+			default:
+				size+=8L*capacity;
+				String[] column=(String[])columns[col];
+				for(int row=0;row<rows;row++){
+					if(column[row]!=null){
+						size+=40+column[row].length();
+					}
+				}
+			}
+		}
+
+		return size;
+	}
+
+	// Grows every column to hold at least the given number of rows.
+	private void ensureCapacity(int needed){
+		int capacity=this.capacity();
+
+		if(needed>capacity){
+			int newCapacity=Math.max(needed,capacity+(capacity>>1)+1);
+			for(int col=0;col<types.length;col++){
+				columns[col]=copyColumn(types[col],columns[col],newCapacity);
+			}
+		}
+	}
+
+	private int capacity(){
+		if(types.length==0){
+			return Integer.MAX_VALUE;
+		}
+
+		switch(types[0]){
+		case TraceTable.BOOL:
+			return ((boolean[])columns[0]).length;
+		case TraceTable.INT:
+			return ((int[])columns[0]).length;
+		case TraceTable.REAL:
+			return ((double[])columns[0]).length;
+		default:
+			return ((String[])columns[0]).length;
+		}
+	}
+
+	private static Object newColumn(int type, int capacity){
+		switch(type){
+		case TraceTable.BOOL:
+			return new boolean[capacity];
+		case TraceTable.INT:
+			return new int[capacity];
+		case TraceTable.REAL:
+			return new double[capacity];
+		default:
+			return new String[capacity];
+		}
+	}
+
+	private static Object copyColumn(int type, Object column, int capacity){
+		Object copy=newColumn(type,capacity);
+		int length=Math.min(capacity,java.lang.reflect.Array.getLength(column));
+		System.arraycopy(column,0,copy,0,length);
+		return copy;
+	}
+
+	// A real as trace files write it: plain decimal, no trailing zeros.
+	public static String formatReal(double value){
+		if(value==Math.rint(value) && Math.abs(value)<1e15){
+			return Long.toString((long)value);
+		}
+		String text=Double.toString(value);
+		if(text.indexOf('E')==-1 || Double.isNaN(value) || Double.isInfinite(value)){
+			return text;
+		}
+		return new BigDecimal(text).stripTrailingZeros().toPlainString();
+	}
+
+	// Value parsing. Accepts the formats seen in SUT/oracle traces and jKind output.
+	public static boolean parseBool(String value){
+		value=value.trim();
+
+		if(value.equals("1") || value.equalsIgnoreCase("true")){
+			return true;
+		}else if(value.equals("0") || value.equals("") || value.equalsIgnoreCase("false") || value.equalsIgnoreCase("nan")){
+			return false;
+		}
+
+		return parseReal(value)!=0.0;
+	}
+
+	public static int parseInt(String value){
+		value=value.trim();
+
+		try{
+			return Integer.parseInt(value);
+		}catch(NumberFormatException e){
+			return (int)parseReal(value);
+		}
+	}
+
+	public static double parseReal(String value){
+		value=value.trim();
+
+		if(value.equals("")){
+			return 0.0;
+		}else if(value.equalsIgnoreCase("nan")){
+			return Double.NaN;
+		}else if(value.equalsIgnoreCase("true")){
+			return 1.0;
+		}else if(value.equalsIgnoreCase("false")){
+			return 0.0;
+		}else if(value.contains("/")){
+			String[] parts=value.split("/");
+			return Double.parseDouble(parts[0])/Double.parseDouble(parts[1]);
+		}
+
+		return Double.parseDouble(value);
+	}
+}
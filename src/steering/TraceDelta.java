@@ -0,0 +1,220 @@
+/*	TraceDelta
+	Steered trace stored as the differences from its oracle (base) trace.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Writes the changed, appended and truncated steps of each test.
+		- Reads a delta back as overlays over the base trace.
+		- SHA-256 of the base file, checked when reading.
+
+	README:
+		- Layout (text, ISO-8859-1):
+			TDELTA,<version>
+			<SHA-256 of the base trace file, hex>
+			<header line>
+			then for each test that differs from the base:
+				test,<test>,<rows in the steered test>
+				<step>,<row> for each step that differs, or is past the end of
+				the base test
+		- Steps of a test missing from the delta are read from the base. A
+		  test with fewer rows than its base has been truncated.
+		- Tests the steered trace never touched cost nothing to write.
+*/
+
+package steering;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+
+public class TraceDelta {
+
+	public static final String EXTENSION=".tdelta";
+	private static final String MAGIC="TDELTA";
+	private static final int VERSION=1;
+
+	// Hashes already computed, keyed on file name, length and modification time
+	private static final HashMap<String,String> hashes=new HashMap<String,String>();
+
+	// Checks the first line of a file.
+	public static boolean isDelta(String file){
+		try{
+			FileInputStream in=new FileInputStream(file);
+			try{
+				byte[] magic=new byte[MAGIC.length()+1];
+				return in.read(magic)==magic.length && new String(magic,StandardCharsets.ISO_8859_1).equals(MAGIC+",");
+			}finally{
+				in.close();
+			}
+		}catch(IOException e){
+			return false;
+		}
+	}
+
+	// SHA-256 of a file's contents, as hex.
+	public static String hashFile(String file) throws IOException{
+		File onDisk=new File(file);
+		String key=onDisk.getAbsolutePath()+"|"+onDisk.length()+"|"+onDisk.lastModified();
+
+		synchronized(hashes){
+			if(hashes.containsKey(key)){
+				return hashes.get(key);
+			}
+		}
+
+		MessageDigest digest;
+		try{
+			digest=MessageDigest.getInstance("SHA-256");
+		}catch(NoSuchAlgorithmException e){
+			throw new IOException(e);
+		}
+
+		FileChannel channel=FileChannel.open(Paths.get(file),StandardOpenOption.READ);
+		try{
+			ByteBuffer buffer=ByteBuffer.allocateDirect(1<<20);
+			while(channel.read(buffer)!=-1){
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}finally{
+			channel.close();
+		}
+
+		StringBuilder hex=new StringBuilder();
+		for(byte part: digest.digest()){
+			hex.append(String.format("%02x",part));
+		}
+
+		synchronized(hashes){
+			hashes.put(key,hex.toString());
+		}
+		return hex.toString();
+	}
+
+	// Writes the differences between a steered trace and the base trace it was copied from.
+	public static void write(TraceTable steered, TraceTable base, String baseFile, String file) throws IOException{
+		BufferedWriter writer=new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),StandardCharsets.ISO_8859_1),1<<16);
+
+		try{
+			writer.write(MAGIC+","+VERSION+"\n");
+			writer.write(hashFile(baseFile)+"\n");
+			writer.write(steered.getHeaderLine()+"\n");
+
+			for(int test=0;test<steered.getTestCount();test++){
+				// Still shared with the base, nothing to write.
+				if(!steered.isOwned(test)){
+					continue;
+				}
+
+				TraceBlock block=steered.getTest(test);
+				TraceBlock baseBlock=base.getTest(test);
+				int rows=block.getRowCount();
+				int baseRows=baseBlock.getRowCount();
+				// An overlay knows which rows it holds, anything else is compared in full.
+				boolean overlay=(block instanceof OverlayBlock) && ((OverlayBlock)block).getBase()==baseBlock;
+				boolean started=false;
+
+				for(int row=0;row<rows;row++){
+					if(row<baseRows){
+						if(overlay && !((OverlayBlock)block).isEdited(row)){
+							continue;
+						}
+						if(sameRow(block,baseBlock,row)){
+							continue;
+						}
+					}
+					if(!started){
+						writer.write("test,"+test+","+rows+"\n");
+						started=true;
+					}
+					writer.write(row+","+block.getRow(row)+"\n");
+				}
+
+				if(!started && rows!=baseRows){
+					writer.write("test,"+test+","+rows+"\n");
+				}
+			}
+		}finally{
+			writer.close();
+		}
+	}
+
+	private static boolean sameRow(TraceBlock block, TraceBlock baseBlock, int row){
+		for(int col=0;col<block.getColumnCount();col++){
+			if(block.getType(col)==TraceTable.STRING){
+				if(!block.getString(row,col).equals(baseBlock.getString(row,col))){
+					return false;
+				}
+			}else if(Double.doubleToLongBits(block.getDouble(row,col))!=Double.doubleToLongBits(baseBlock.getDouble(row,col))){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Reads a delta as a copy of the base trace, with each changed test held
+	// as an overlay over the base's block. Unchanged tests are shared.
+	public static TraceTable read(String file, TraceTable base, String baseFile) throws IOException, SteeringDataException{
+		TraceTable steered=new TraceTable(base);
+		BufferedReader reader=new BufferedReader(new InputStreamReader(new FileInputStream(file),StandardCharsets.ISO_8859_1),1<<16);
+
+		try{
+			String line=reader.readLine();
+			if(line==null || !line.equals(MAGIC+","+VERSION)){
+				throw new SteeringDataException("Not a trace delta (or unsupported version): "+file);
+			}
+			if(!hashFile(baseFile).equals(reader.readLine())){
+				throw new SteeringDataException("Trace delta "+file+" was not made from "+baseFile);
+			}
+			if(!base.getHeaderLine().equals(reader.readLine())){
+				throw new SteeringDataException("Trace delta "+file+" has different variables than "+baseFile);
+			}
+
+			TraceBlock block=null;
+			while((line=reader.readLine())!=null){
+				int comma=line.indexOf(',');
+				if(line.startsWith("test,")){
+					String[] parts=line.split(",");
+					int test=Integer.parseInt(parts[1]);
+					int rows=Integer.parseInt(parts[2]);
+					block=steered.getWritableTest(test);
+					block.truncate(rows);
+				}else if(block!=null && comma>0){
+					int step=Integer.parseInt(line.substring(0,comma));
+					if(step<block.getRowCount()){
+						block.setRow(step,line.substring(comma+1));
+					}else{
+						block.appendEdit(line.substring(comma+1));
+					}
+				}else{
+					throw new SteeringDataException("Invalid line in trace delta "+file+": "+line);
+				}
+			}
+		}finally{
+			reader.close();
+		}
+
+		for(int test=0;test<steered.getTestCount();test++){
+			if(steered.isOwned(test)){
+				steered.getTest(test).clearDirty();
+			}
+		}
+
+		return steered;
+	}
+}
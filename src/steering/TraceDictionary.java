@@ -0,0 +1,97 @@
+/*	TraceDictionary
+	Distinct cell values of the traces in encoded storage.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Numbers and strings each given a code the first time they are seen.
+
+	README:
+		- Shared by every EncodedBlock of the traces read with encoded storage,
+		  so a value repeated across cells, tests and traces is kept once.
+		- Numbers are told apart by their bits (NaN, -0.0 and 0.0 each get
+		  their own code).
+		- Holds at most MAX_VALUES of each. Columns with values beyond that
+		  are kept plain by EncodedBlock.
+		- Codes can be added from several threads. Values are read without
+		  locking: a code is only handed out once its value is stored.
+*/
+
+package steering;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class TraceDictionary {
+
+	public static final int MAX_VALUES=1<<16;
+
+	private HashMap<Long,Integer> numberCodes=new HashMap<Long,Integer>();
+	private volatile double[] numbers=new double[64];
+	private HashMap<String,Integer> stringCodes=new HashMap<String,Integer>();
+	private volatile String[] strings=new String[64];
+
+	// Code of a number, added if new. -1 if the dictionary is full.
+	public synchronized int codeOf(double value){
+		Long key=Double.doubleToLongBits(value);
+		Integer code=numberCodes.get(key);
+		if(code==null){
+			if(numberCodes.size()>=MAX_VALUES){
+				return -1;
+			}
+			code=numberCodes.size();
+			double[] table=numbers;
+			if(code==table.length){
+				table=Arrays.copyOf(table,table.length*2);
+			}
+			table[code]=value;
+			numbers=table;
+			numberCodes.put(key,code);
+		}
+		return code;
+	}
+
+	// Code of a string, added if new. -1 if the dictionary is full.
+	public synchronized int codeOf(String value){
+		Integer code=stringCodes.get(value);
+		if(code==null){
+			if(stringCodes.size()>=MAX_VALUES){
+				return -1;
+			}
+			code=stringCodes.size();
+			String[] table=strings;
+			if(code==table.length){
+				table=Arrays.copyOf(table,table.length*2);
+			}
+			table[code]=value;
+			strings=table;
+			stringCodes.put(value,code);
+		}
+		return code;
+	}
+
+	public double getNumber(int code){
+		return numbers[code];
+	}
+
+	public String getString(int code){
+		return strings[code];
+	}
+
+	public synchronized int size(){
+		return numberCodes.size()+stringCodes.size();
+	}
+
+	// Rough number of bytes held, counted once for all the blocks sharing it.
+	public synchronized long estimateSize(){
+		long size=16+8L*numbers.length+16+8L*strings.length;
+		size+=64L*numberCodes.size();
+		size+=48L*stringCodes.size();
+		for(int code=0;code<stringCodes.size();code++){
+			if(strings[code]!=null){
+				size+=40+strings[code].length();
+			}
+		}
+		return size;
+	}
+}
@@ -0,0 +1,173 @@
+/*	TraceIndex
+	Test boundaries of a trace file, kept in a sidecar (.tidx) file.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Header, per-test byte offsets and row counts.
+		- Length, modification time and CRC32 of the trace, to spot stale indexes.
+
+	README:
+		- The index is written next to the trace as <trace>.tidx.
+		- The offsets depend on isOffset, so it is stored and checked as well.
+*/
+
+package steering;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class TraceIndex {
+
+	public static final String EXTENSION=".tidx";
+	private static final int MAGIC=0x54494458; // "TIDX"
+	private static final int VERSION=1;
+
+	private boolean offset;
+	private long fileLength;
+	private long modified;
+	private long checksum;
+	private String header;
+	private long[] testStarts;
+	private long[] testEnds;
+	private int[] rowCounts;
+
+	public TraceIndex(boolean isOffset, long length, long lastModified, long crc, String head,
+						long[] starts, long[] ends, int[] rows){
+		offset=isOffset;
+		fileLength=length;
+		modified=lastModified;
+		checksum=crc;
+		header=head;
+		testStarts=starts;
+		testEnds=ends;
+		rowCounts=rows;
+	}
+
+	// Name of the sidecar file for a trace.
+	public static String indexFileFor(String traceFile){
+		return traceFile+EXTENSION;
+	}
+
+	// Reads the index for a trace, or returns null if there is no usable index.
+	public static TraceIndex readIndex(String traceFile){
+		File file=new File(indexFileFor(traceFile));
+		if(!file.exists()){
+			return null;
+		}
+
+		try{
+			DataInputStream in=new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+			try{
+				if(in.readInt()!=MAGIC || in.readInt()!=VERSION){
+					return null;
+				}
+
+				boolean isOffset=in.readBoolean();
+				long length=in.readLong();
+				long lastModified=in.readLong();
+				long crc=in.readLong();
+				byte[] head=new byte[in.readInt()];
+				in.readFully(head);
+				int tests=in.readInt();
+				long[] starts=new long[tests];
+				long[] ends=new long[tests];
+				int[] rows=new int[tests];
+
+				for(int test=0;test<tests;test++){
+					starts[test]=in.readLong();
+					ends[test]=in.readLong();
+					rows[test]=in.readInt();
+				}
+
+				return new TraceIndex(isOffset,length,lastModified,crc,new String(head,StandardCharsets.ISO_8859_1),starts,ends,rows);
+			}finally{
+				in.close();
+			}
+		}catch(IOException e){
+			// Truncated or unreadable index, it will be rebuilt.
+			return null;
+		}
+	}
+
+	// Writes the index next to its trace. Failure to write is not fatal.
+	public void writeIndex(String traceFile){
+		File file=new File(indexFileFor(traceFile));
+
+		try{
+			DataOutputStream out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+			try{
+				byte[] head=header.getBytes(StandardCharsets.ISO_8859_1);
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeBoolean(offset);
+				out.writeLong(fileLength);
+				out.writeLong(modified);
+				out.writeLong(checksum);
+				out.writeInt(head.length);
+				out.write(head);
+				out.writeInt(testStarts.length);
+
+				for(int test=0;test<testStarts.length;test++){
+					out.writeLong(testStarts[test]);
+					out.writeLong(testEnds[test]);
+					out.writeInt(rowCounts[test]);
+				}
+			}finally{
+				out.close();
+			}
+		}catch(IOException e){
+			System.out.println("Could not write trace index: "+file.getPath());
+			file.delete();
+		}
+	}
+
+	public boolean getOffset(){
+		return offset;
+	}
+
+	public long getFileLength(){
+		return fileLength;
+	}
+
+	public long getModified(){
+		return modified;
+	}
+
+	public void setModified(long lastModified){
+		modified=lastModified;
+	}
+
+	public long getChecksum(){
+		return checksum;
+	}
+
+	public String getHeader(){
+		return header;
+	}
+
+	public int getTestCount(){
+		return testStarts.length;
+	}
+
+	public long getTestStart(int test){
+		return testStarts[test];
+	}
+
+	public long getTestEnd(int test){
+		return testEnds[test];
+	}
+
+	public int getRowCount(int test){
+		return rowCounts[test];
+	}
+}
@@ -0,0 +1,91 @@
+/*	TraceMemory
+	Memory budget for decoded tests, shared by the traces of a steering run.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Tracks the decoded tests of every table using the budget.
+		- Least recently used tests dropped once the budget is exceeded.
+
+	README:
+		- Sizes are estimates of the column arrays (see TraceBlock.estimateSize).
+		- Only tests that can be read again are tracked: tests of a trace file,
+		  and steered tests already written to the steering journal. Edited
+		  tests stay in memory until they are written.
+		- The test just used is never dropped, so a single test larger than
+		  the budget still works.
+*/
+
+package steering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TraceMemory {
+
+	private long budget;
+	private long resident=0;
+	private long evictions=0;
+	// (table, test) to size, least recently used first
+	private LinkedHashMap<List<Object>,Long> tests=new LinkedHashMap<List<Object>,Long>(64,0.75f,true);
+
+	public TraceMemory(long bytes){
+		budget=bytes;
+	}
+
+	public long getBudget(){
+		return budget;
+	}
+
+	public synchronized long getResident(){
+		return resident;
+	}
+
+	public synchronized long getEvictions(){
+		return evictions;
+	}
+
+	// Records a use of a test, then drops least recently used tests until
+	// the budget is met again.
+	public void touch(TraceTable table, int test, TraceBlock block){
+		List<Object> key=Arrays.asList((Object)table,test);
+		ArrayList<List<Object>> dropped=new ArrayList<List<Object>>();
+
+		synchronized(this){
+			if(tests.get(key)==null){
+				long size=block.estimateSize();
+				tests.put(key,size);
+				resident+=size;
+			}
+
+			Iterator<Map.Entry<List<Object>,Long>> eldest=tests.entrySet().iterator();
+			while(resident>budget && eldest.hasNext()){
+				Map.Entry<List<Object>,Long> entry=eldest.next();
+				if(entry.getKey().equals(key)){
+					break;
+				}
+				resident-=entry.getValue();
+				dropped.add(entry.getKey());
+				eldest.remove();
+				evictions++;
+			}
+		}
+
+		// Tables are called outside the lock, they take their own.
+		for(List<Object> entry: dropped){
+			((TraceTable)entry.get(0)).drop((Integer)entry.get(1));
+		}
+	}
+
+	// Stops tracking a test (it has been edited, or replaced).
+	public synchronized void forget(TraceTable table, int test){
+		Long size=tests.remove(Arrays.asList((Object)table,test));
+		if(size!=null){
+			resident-=size;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/*	TraceRecords
+	Read view over the rows of one test, through a ProjectionPlan.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Entry 0 is the projected header, entries 1.. are rows of the test.
+		- Rows rendered only when asked for, and then kept.
+
+	README:
+		- Laid out like the lists extractRecords has always returned.
+		- set() replaces an entry of the view only, the trace is not changed.
+		- The view reads the block of the test directly. Rows already read are
+		  kept, so take a new view after editing the trace.
+*/
+
+package steering;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+public class TraceRecords extends AbstractList<String> implements RandomAccess {
+
+	private ProjectionPlan plan;
+	private TraceBlock block;
+	// First row of the block in the view, and number of rows
+	private int first;
+	private int count;
+	// The requested step does not exist, the view holds the dummy row
+	private boolean dummy;
+	// Rendered (or replaced) entries
+	private String[] rendered;
+
+	public TraceRecords(ProjectionPlan projection, TraceBlock rows, int firstRow, int rowCount, boolean isDummy){
+		plan=projection;
+		block=rows;
+		first=firstRow;
+		count=rowCount;
+		dummy=isDummy;
+		rendered=new String[count+1];
+	}
+
+	public String get(int entry){
+		if(entry<0 || entry>count){
+			throw new IndexOutOfBoundsException("Entry "+entry+", size "+(count+1));
+		}
+
+		String value=rendered[entry];
+		if(value==null){
+			if(entry==0){
+				value=plan.getHeader();
+			}else if(dummy){
+				value=plan.getDummyRow();
+			}else{
+				value=plan.render(block,first+entry-1);
+			}
+			rendered[entry]=value;
+		}
+
+		return value;
+	}
+
+	public String set(int entry, String value){
+		String old=this.get(entry);
+		rendered[entry]=value;
+		return old;
+	}
+
+	public int size(){
+		return count+1;
+	}
+
+	public ProjectionPlan getPlan(){
+		return plan;
+	}
+
+	public TraceBlock getBlock(){
+		return block;
+	}
+
+	// Row of the block behind an entry, or -1 for the header and dummy rows.
+	public int getRow(int entry){
+		if(entry==0 || dummy){
+			return -1;
+		}
+		return first+entry-1;
+	}
+}
@@ -0,0 +1,36 @@
+/*	TraceSource
+	A trace file that tests can be read from one at a time.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- File name of the source.
+		- Tests can be decoded from a subset of the columns.
+
+	README:
+		- Implemented by MappedTraceReader (CSV) and BinaryTraceFile (binary).
+		- Used by TraceTable to decode tests on first access.
+*/
+
+package steering;
+
+public interface TraceSource {
+
+	// File the trace is read from
+	public String getFilename();
+
+	// Variable list, comma-separated
+	public String getHeader();
+
+	// Column type stored in the file (TraceTable.STRING if the file is untyped)
+	public int getColumnType(int col);
+
+	public int getTestCount();
+
+	public int getRowCount(int test);
+
+	// Decodes one test into columns of the given types. Column i of the block
+	// is read from column fields[i] of the file (increasing). Null reads
+	// every column.
+	public TraceBlock readTest(int test, int[] types, int[] fields);
+}
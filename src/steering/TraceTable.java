@@ -0,0 +1,481 @@
+/*	TraceTable
+	Columnar, primitive-typed representation of a trace file.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Each test decoded once into typed columns, using the model's type map.
+		- Tests can be backed by a MappedTraceReader and decoded on first access.
+		- Any TraceSource (CSV or binary) can back the table.
+		- Tests can be decoded in parallel (preload), getTest is thread-safe.
+		- Blocks shared with a parent are copied once, then edited in place.
+		- Edits to a copy are kept as sparse overlays over the parent's blocks.
+		- Columns can be pruned when the trace is read, only those asked for
+		  are decoded and stored.
+		- Tests can be kept under a memory budget, dropped and read again later.
+		- Tests written elsewhere (spilled) can be dropped and read back from there.
+		- Optional encoded storage: tests kept as EncodedBlocks over a shared dictionary.
+
+	README:
+		- Tests are indexed as in the trace file (first test is 0).
+		- Steps are indexed from 0. The header is stored once, not as a row.
+		- Variables missing from the type map take the type stored in the file,
+		  which for CSV traces is a string.
+		- A pruned table only has the kept columns, in file order. Asking for a
+		  pruned variable fails as if the file never had it.
+		- Under a memory budget (setMemory), a copy does not hold on to the
+		  parent's blocks, so the parent's budget decides what stays loaded.
+		  Edited tests are pinned in memory until they are spilled.
+		- With encoded storage (setDictionary), tests are encoded as they are
+		  decoded. Edits go to an overlay (in a copy) or to a decoded copy of
+		  the test (in a table read from a file).
+*/
+
+package steering;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class TraceTable {
+
+	// Column types
+	public static final int BOOL=0;
+	public static final int INT=1;
+	public static final int REAL=2;
+	public static final int STRING=3;
+
+	// Variable list, as it appears in the file
+	private String headerLine;
+	private String[] header;
+	private int[] types;
+	private HashMap<String,Integer> columnIndex;
+	// Column of the file behind each column of the table, or null if every
+	// column of the file is kept
+	private int[] fileColumns;
+	// One block of rows per test, null until decoded
+	private ArrayList<TraceBlock> tests;
+	// Where undecoded tests come from (a file, or the table this one copies)
+	private TraceSource source;
+	private TraceTable parent;
+	// Tests whose block belongs to this table alone, and can be edited in place
+	private BitSet owned=new BitSet();
+	// Tests that may have been edited, and cannot be dropped
+	private BitSet pinned=new BitSet();
+	// Tests to read back from the spill source instead of the parent or file
+	private BitSet spilled=new BitSet();
+	private TraceSource spill;
+	// Budget for decoded tests, or null to keep every test once decoded
+	private TraceMemory memory;
+	// Values of the encoded tests, or null if tests are not encoded
+	private TraceDictionary dictionary;
+
+	public TraceTable(String head, HashMap<String,String> typeMap){
+		this(head, typeMap, null);
+	}
+	
+	// As above, keeping only the listed variables of the rows added (null keeps all).
+	public TraceTable(String head, HashMap<String,String> typeMap, Collection<String> keep){
+		this.setHeader(head, typeMap, null, keep);
+	}
+	
+	// Table backed by a trace file. Tests are decoded when first used.
+	public TraceTable(TraceSource reader, HashMap<String,String> typeMap){
+		this(reader, typeMap, null);
+	}
+	
+	// As above, keeping only the listed variables (null keeps all).
+	public TraceTable(TraceSource reader, HashMap<String,String> typeMap, Collection<String> keep){
+		this.setHeader(reader.getHeader(), typeMap, reader, keep);
+		source=reader;
+		
+		for(int test=0;test<reader.getTestCount();test++){
+			tests.add(null);
+		}
+	}
+	
+	private void setHeader(String head, HashMap<String,String> typeMap, TraceSource reader, Collection<String> keep){
+		String[] fileHeader=head.split(",");
+		ArrayList<Integer> kept=new ArrayList<Integer>();
+		for(int col=0;col<fileHeader.length;col++){
+			if(keep==null || keep.contains(fileHeader[col])){
+				kept.add(col);
+			}
+		}
+
+		if(kept.size()==fileHeader.length){
+			headerLine=head;
+			header=fileHeader;
+			fileColumns=null;
+		}else{
+			header=new String[kept.size()];
+			fileColumns=new int[kept.size()];
+			StringBuilder line=new StringBuilder();
+			for(int col=0;col<header.length;col++){
+				fileColumns[col]=kept.get(col);
+				header[col]=fileHeader[fileColumns[col]];
+				if(col>0){
+					line.append(',');
+				}
+				line.append(header[col]);
+			}
+			headerLine=line.toString();
+		}
+
+		types=new int[header.length];
+		columnIndex=new HashMap<String,Integer>();
+		tests=new ArrayList<TraceBlock>();
+
+		for(int col=0;col<header.length;col++){
+			String type=null;
+			if(typeMap!=null){
+				type=typeMap.get(header[col]);
+			}
+			if(type==null && reader!=null){
+				types[col]=reader.getColumnType(this.fileColumn(col));
+			}else{
+				types[col]=typeOf(type);
+			}
+			columnIndex.put(header[col],col);
+		}
+	}
+
+	private int fileColumn(int col){
+		if(fileColumns==null){
+			return col;
+		}
+		return fileColumns[col];
+	}
+
+	// Copy that shares the test blocks with this table.
+	// Edited tests are kept as overlays over the shared blocks (see getWritableTest).
+	public TraceTable(TraceTable other){
+		headerLine=other.headerLine;
+		header=other.header;
+		types=other.types;
+		columnIndex=other.columnIndex;
+		fileColumns=other.fileColumns;
+		dictionary=other.dictionary;
+		synchronized(other.tests){
+			tests=new ArrayList<TraceBlock>(other.tests);
+		}
+		parent=other;
+	}
+
+	// Maps a Lustre type to a column type.
+	public static int typeOf(String lustreType){
+		if(lustreType==null){
+			return STRING;
+		}else if(lustreType.contains("bool")){
+			return BOOL;
+		}else if(lustreType.contains("int")){
+			return INT;
+		}else if(lustreType.contains("real")){
+			return REAL;
+		}
+
+		return STRING;
+	}
+
+	// Decodes a list of CSV rows (no header) as a new test.
+	public void addTest(List<String> rows){
+		synchronized(tests){
+			owned.set(tests.size());
+			pinned.set(tests.size());
+			tests.add(this.encode(this.decode(rows)));
+		}
+	}
+	
+	private TraceBlock decode(List<String> rows){
+		TraceBlock block=new TraceBlock(types,rows.size());
+
+		for(String row: rows){
+			block.appendRow(row,fileColumns);
+		}
+
+		return block;
+	}
+
+	// Encodes a newly decoded block, if tests are stored encoded.
+	private TraceBlock encode(TraceBlock block){
+		if(dictionary==null){
+			return block;
+		}
+		return EncodedBlock.encode(block,dictionary);
+	}
+
+	// Stores tests as EncodedBlocks over the dictionary from now on (null
+	// stores them plain). Tests already decoded, and not edited, are encoded
+	// too. A copy starts with its parent's dictionary. It shares the
+	// parent's blocks, so only tests it reads back from a spill are encoded.
+	public void setDictionary(TraceDictionary values){
+		synchronized(tests){
+			dictionary=values;
+			if(dictionary==null || parent!=null){
+				return;
+			}
+			for(int test=0;test<tests.size();test++){
+				TraceBlock block=tests.get(test);
+				if(block!=null && !(block instanceof EncodedBlock) && !(block instanceof OverlayBlock) && block.getDirtyRows().isEmpty()){
+					tests.set(test,EncodedBlock.encode(block,dictionary));
+				}
+			}
+		}
+	}
+
+	public TraceDictionary getDictionary(){
+		return dictionary;
+	}
+
+	public int getTestCount(){
+		return tests.size();
+	}
+
+	// Returns the rows of a test, decoding them if this is the first access.
+	// Tests may be decoded from several threads. Decoding happens outside
+	// the lock, and the first block stored wins.
+	public TraceBlock getTest(int test){
+		TraceBlock block;
+		boolean fromSpill;
+		synchronized(tests){
+			block=tests.get(test);
+			fromSpill=spilled.get(test);
+		}
+		
+		if(block==null){
+			if(fromSpill){
+				block=this.encode(spill.readTest(test,types,null));
+			}else if(parent!=null){
+				block=parent.getTest(test);
+				// The parent's budget covers this block, don't keep it alive here.
+				if(memory!=null){
+					return block;
+				}
+			}else{
+				block=this.encode(source.readTest(test,types,fileColumns));
+			}
+			synchronized(tests){
+				if(tests.get(test)==null){
+					tests.set(test,block);
+					if(parent==null || fromSpill){
+						owned.set(test);
+					}
+				}else{
+					block=tests.get(test);
+				}
+			}
+		}
+		
+		if(memory!=null && this.canDrop(test)){
+			memory.touch(this,test,block);
+		}
+		
+		return block;
+	}
+
+	// True if the test can be read again after being dropped.
+	private boolean canDrop(int test){
+		synchronized(tests){
+			return !pinned.get(test) && (spilled.get(test) || (parent==null && source!=null));
+		}
+	}
+
+	// Drops the decoded block of a test, unless it has been edited since.
+	// Called by the memory budget.
+	public void drop(int test){
+		synchronized(tests){
+			if(!pinned.get(test)){
+				tests.set(test,null);
+				if(!spilled.get(test)){
+					owned.clear(test);
+				}
+			}
+		}
+	}
+
+	// Marks a test as written to the given source, which it is read back from
+	// from now on. The block in memory can then be dropped like any other.
+	public void spill(int test, TraceSource to){
+		synchronized(tests){
+			spill=to;
+			spilled.set(test);
+			pinned.clear(test);
+			owned.set(test);
+			tests.set(test,null);
+		}
+		if(memory!=null){
+			memory.forget(this,test);
+		}
+	}
+
+	public boolean isSpilled(int test){
+		synchronized(tests){
+			return spilled.get(test);
+		}
+	}
+
+	// Puts the table's decoded tests under a memory budget (null for none).
+	// A copy lets go of the blocks it shares with its parent.
+	public void setMemory(TraceMemory budget){
+		memory=budget;
+		if(memory!=null && parent!=null){
+			synchronized(tests){
+				for(int test=0;test<tests.size();test++){
+					if(!owned.get(test)){
+						tests.set(test,null);
+					}
+				}
+			}
+		}
+	}
+
+	public TraceMemory getMemory(){
+		return memory;
+	}
+
+	// Decodes a set of tests in parallel, on the fork-join pool.
+	public void preload(List<Integer> toLoad){
+		ArrayList<ForkJoinTask<TraceBlock>> loading=new ArrayList<ForkJoinTask<TraceBlock>>();
+
+		for(final Integer test: toLoad){
+			if(test>=0 && test<this.getTestCount() && !this.isLoaded(test)){
+				loading.add(ForkJoinPool.commonPool().submit(new Callable<TraceBlock>(){
+					public TraceBlock call(){
+						return getTest(test);
+					}
+				}));
+			}
+		}
+
+		for(ForkJoinTask<TraceBlock> task: loading){
+			task.join();
+		}
+	}
+	
+	public boolean isLoaded(int test){
+		synchronized(tests){
+			return tests.get(test)!=null;
+		}
+	}
+
+	// True if the test's block belongs to this table, rather than being
+	// shared with (or still to be read from) the parent.
+	public boolean isOwned(int test){
+		synchronized(tests){
+			return owned.get(test);
+		}
+	}
+
+	// Replaces the block of a test. The table takes ownership of the block.
+	public void setTest(int test, TraceBlock block){
+		synchronized(tests){
+			tests.set(test,block);
+			owned.set(test);
+			pinned.set(test);
+			spilled.clear(test);
+		}
+		if(memory!=null){
+			memory.forget(this,test);
+		}
+	}
+
+	// Returns a block for the test that can be edited in place. A block
+	// shared with the parent table is wrapped in an overlay the first time
+	// this is called. Edits go to the overlay, the parent's block is unchanged.
+	public TraceBlock getWritableTest(int test){
+		TraceBlock block=this.getTest(test);
+
+		synchronized(tests){
+			if(!owned.get(test)){
+				// Shared with the parent (or dropped, if there is no parent).
+				if(parent!=null){
+					block=new OverlayBlock(block);
+				}
+				tests.set(test,block);
+				owned.set(test);
+			}else if(tests.get(test)==null){
+				// Read back from the spill source, and dropped again since.
+				tests.set(test,block);
+			}
+			// Encoded blocks are read-only, edit a decoded copy.
+			if(tests.get(test) instanceof EncodedBlock){
+				tests.set(test,new TraceBlock(tests.get(test)));
+			}
+			pinned.set(test);
+			block=tests.get(test);
+		}
+		if(memory!=null){
+			memory.forget(this,test);
+		}
+		return block;
+	}
+
+	public int getRowCount(int test){
+		// Row counts are known from the file index, no need to decode.
+		if(!this.isLoaded(test) && source!=null){
+			return source.getRowCount(test);
+		}
+		return this.getTest(test).getRowCount();
+	}
+
+	// Table this one was copied from, or null.
+	public TraceTable getParent(){
+		return parent;
+	}
+
+	// File the tests are read from, or null.
+	public TraceSource getSource(){
+		return source;
+	}
+
+	public String getHeaderLine(){
+		return headerLine;
+	}
+
+	public String[] getHeader(){
+		return header;
+	}
+
+	public int getColumnCount(){
+		return header.length;
+	}
+
+	// Column of the file behind each column, or null if no column was pruned.
+	public int[] getFileColumns(){
+		return fileColumns;
+	}
+
+	// Column of a variable, or -1 if the trace does not contain it.
+	public int getColumnIndex(String variable){
+		Integer col=columnIndex.get(variable);
+		if(col==null){
+			return -1;
+		}
+		return col;
+	}
+
+	public int getType(int col){
+		return types[col];
+	}
+
+	public int[] getTypes(){
+		return types;
+	}
+
+	public double getDouble(int test, int step, int col){
+		return this.getTest(test).getDouble(step,col);
+	}
+
+	public String getString(int test, int step, int col){
+		return this.getTest(test).getString(step,col);
+	}
+
+	public String getRow(int test, int step){
+		return this.getTest(test).getRow(step);
+	}
+}
@@ -2,7 +2,21 @@
 	Miscellaneous Functionality for Oracle Steering
 	
 	Gregory Gay (greg@greggay.com)
-	Last Updated: 06/11/2014
+	Last Updated: 10/18/2026
+		- Edits and truncation reported to the steerer's scorer, for incremental scoring.
+		- Encoded storage mode: values interned in a shared dictionary, constant columns as runs.
+		- Traces can be read keeping only the columns steering needs.
+		- Compressed (gzip/deflate) traces read directly, *.gz written block-compressed.
+		- Steered traces read and written as deltas over the oracle (.tdelta).
+		- Edits and truncation done in place, not on a copy of the test.
+		- Record extraction driven by cached projection plans, row views.
+		- Trace files indexed in parallel, and read concurrently (readTraceFiles).
+		- Binary (.trb) traces read and written transparently.
+		- Trace indexes saved to, and reused from, a sidecar .tidx file.
+		- Trace files are memory-mapped and decoded one test at a time, on demand.
+		- Traces are read into a columnar TraceTable.
+		- Extract/edit/remove records work directly on the TraceTable.
+	06/11/2014
 		- Function to remove records from a trace.
 	06/10/2014
 	 	- Extract records returns a dummy record if an invalid one requested.
@@ -24,17 +38,24 @@
 package steering;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class WorkerFunctions{
 
 	private SteerModel steerer;
+	// Values of the traces read in encoded storage, or null for plain storage
+	private TraceDictionary dictionary;
 
 	public WorkerFunctions(SteerModel st){
 		steerer=st;
@@ -47,45 +68,153 @@ public class WorkerFunctions{
 	public void setSteerer(SteerModel st){
 		steerer=st;
 	}
+
+	public boolean isEncoded(){
+		return dictionary!=null;
+	}
+
+	// Encoded storage trades a little read time for a much smaller trace in
+	// memory. Traces read from now on share one dictionary, so a value
+	// repeated across them is stored once. Edited tests are decoded again
+	// (see TraceTable).
+	public void setEncoded(boolean encoded){
+		if(!encoded){
+			dictionary=null;
+		}else if(dictionary==null){
+			dictionary=new TraceDictionary();
+		}
+	}
+	
+	// Maps in a trace file and indexes its tests. Tests are decoded into a
+	// TraceTable only when they are first accessed.
+	public TraceTable readTraceFile(String filename){
+		return this.readTraceFile(filename, (Collection<String>)null);
+	}
+	
+	// As above, keeping only the listed variables (null keeps all). The
+	// other columns are skipped over, never decoded or stored.
+	public TraceTable readTraceFile(String filename, Collection<String> keep){
+		HashMap<String,String> typeMap = null;
+		if(steerer.getModel()!=null){
+			typeMap=steerer.getModel().getTypeMap();
+		}
+		
+		return this.readTraceFile(filename, steerer.getOffset(), typeMap, keep);
+	}
+	
+	// As above, without needing a steerer. Binary and gzip traces are
+	// recognized by their magic number, deflate traces by name (*.deflate,
+	// *.zz), and anything else is read as CSV.
+	public TraceTable readTraceFile(String filename, boolean isOffset, HashMap<String,String> typeMap){
+		return this.readTraceFile(filename, isOffset, typeMap, null);
+	}
 	
-	// Reads in trace file and stores it in an array list, indexed by test number
-	public ArrayList<ArrayList<String>> readTraceFile(String filename){
-		ArrayList<ArrayList<String>> trace = new ArrayList<ArrayList<String>>();
-		boolean firstLine=true;
-		String header="";
+	public TraceTable readTraceFile(String filename, boolean isOffset, HashMap<String,String> typeMap, Collection<String> keep){
+		TraceTable trace = null;
 		
 		try{
-			BufferedReader reader = new BufferedReader(new FileReader(filename));
-			String line="";
-			ArrayList<String> thisTest= new ArrayList<String>();
-			
-			while((line=reader.readLine())!=null){
-				if(firstLine==true){
-					header=line;
-					firstLine=false;
-				}
-				
-				if(line.equals("")){
-					trace.add(thisTest);
-					thisTest=new ArrayList<String>();
-					if(steerer.getOffset()==false){
-						thisTest.add(header);
-					}
-				}else{
-					thisTest.add(line);
-				}
+			if(BinaryTraceFile.isBinary(filename)){
+				trace = new TraceTable(new BinaryTraceFile(filename), typeMap, keep);
+			}else if(CompressedTraceFile.isBlocked(filename)){
+				// Tests are decompressed one at a time, when first used.
+				trace = new TraceTable(new CompressedTraceFile(filename), typeMap, keep);
+			}else if(CompressedTraceFile.isGzip(filename) || CompressedTraceFile.isDeflate(filename)){
+				trace = CompressedTraceFile.readStream(filename, isOffset, typeMap, keep);
+			}else{
+				MappedTraceReader reader = new MappedTraceReader(filename);
+				reader.setIndex(this.readTraceIndex(reader, filename, isOffset));
+				trace = new TraceTable(reader, typeMap, keep);
 			}
-			trace.add(thisTest);
-			
-			reader.close();
 		}catch(IOException e){
 			e.printStackTrace();
 		}
 		
-		
+		if(trace!=null && dictionary!=null){
+			trace.setDictionary(dictionary);
+		}
 		return trace;
 	}
 	
+	// Reads several trace files at once, on the fork-join pool. Null names give
+	// null traces. A file named more than once is read once in parallel, and
+	// again afterwards, so the sidecar index is never written twice at once.
+	public TraceTable[] readTraceFiles(String[] filenames){
+		return this.readTraceFiles(filenames, null);
+	}
+	
+	// As above, keeping only the listed variables of each file. A null list
+	// (or a null entry) keeps every column.
+	public TraceTable[] readTraceFiles(String[] filenames, final List<Collection<String>> keep){
+		TraceTable[] traces = new TraceTable[filenames.length];
+		ArrayList<ForkJoinTask<TraceTable>> loading = new ArrayList<ForkJoinTask<TraceTable>>();
+		ArrayList<String> started = new ArrayList<String>();
+		
+		for(int file=0;file<filenames.length;file++){
+			final String filename = filenames[file];
+			final Collection<String> columns = this.columnsFor(keep, file);
+			if(filename==null || started.contains(filename)){
+				loading.add(null);
+			}else{
+				started.add(filename);
+				loading.add(ForkJoinPool.commonPool().submit(new Callable<TraceTable>(){
+					public TraceTable call(){
+						return readTraceFile(filename, columns);
+					}
+				}));
+			}
+		}
+		
+		for(int file=0;file<filenames.length;file++){
+			if(loading.get(file)!=null){
+				traces[file]=loading.get(file).join();
+			}
+		}
+		for(int file=0;file<filenames.length;file++){
+			if(filenames[file]!=null && loading.get(file)==null){
+				traces[file]=this.readTraceFile(filenames[file], this.columnsFor(keep, file));
+			}
+		}
+		
+		return traces;
+	}
+	
+	private Collection<String> columnsFor(List<Collection<String>> keep, int file){
+		if(keep==null){
+			return null;
+		}
+		return keep.get(file);
+	}
+	
+	// Reads a trace delta as a copy of the base trace, with the delta's
+	// changes applied over it.
+	public TraceTable readTraceDelta(String filename, TraceTable base) throws Exception{
+		if(base==null || base.getSource()==null){
+			throw new SteeringDataException("A trace delta needs a base trace read from a file: "+filename);
+		}
+		
+		return TraceDelta.read(filename, base, base.getSource().getFilename());
+	}
+	
+	// Reuses the sidecar index of a trace if it is still current.
+	// Otherwise, scans the trace and (re)writes the index.
+	public TraceIndex readTraceIndex(MappedTraceReader reader, String filename, boolean isOffset){
+		TraceIndex index = TraceIndex.readIndex(filename);
+		
+		if(index!=null && reader.isCurrent(index, isOffset)){
+			long modified = new File(filename).lastModified();
+			if(index.getModified()!=modified){
+				// Same content, newer timestamp. Save the check next time.
+				index.setModified(modified);
+				index.writeIndex(filename);
+			}
+		}else{
+			index = reader.buildIndex(isOffset);
+			index.writeIndex(filename);
+		}
+		
+		return index;
+	}
+	
 	// Reads in a variable list (or test suite file) and creates an array list, 
 	// Each entry in the list is an entry in the ArrayList
 	public ArrayList<String> readListFile(String filename){
@@ -175,130 +304,89 @@ public class WorkerFunctions{
 		}
 		
 		// Extract records from a trace for a chosen test.
-		public ArrayList<String> extractRecords(ArrayList<ArrayList<String>> trace, ArrayList<String> variables, int test, int step) throws Exception{
-			ArrayList<String> record = new ArrayList<String>();
-			String header = trace.get(0).get(0);
-			
-			// Get indexes of variables to return values for
-			// Unless "variables" is null, in which case, return all variables
-			ArrayList<Integer> indexes = new ArrayList<Integer>();
-			if(variables!=null){
-				ArrayList<String> where = new ArrayList<String>(Arrays.asList(header.split(",")));
-				for(String s: variables){
-					if(where.contains(s)){
-						indexes.add(where.indexOf(s));
-					}else{
-						throw new SteeringDataException("Invalid element requested: "+s);
-					}
-				}
-				
-				// Reformat the header
-				String[] entries = header.split(",");
-				header="";
-				for(int index: indexes){
-					header=header+entries[index]+",";
-				}
-				header=header.substring(0,header.length()-1);
-			}
+		// Returns the (filtered) header, followed by the requested rows.
+		public ArrayList<String> extractRecords(TraceTable trace, ArrayList<String> variables, int test, int step) throws Exception{
+			return new ArrayList<String>(this.viewRecords(trace, variables, test, step));
+		}
+		
+		// As extractRecords, but returns a view over the trace. Rows are only
+		// rendered when read, using a projection plan compiled once per
+		// header and variable list.
+		public TraceRecords viewRecords(TraceTable trace, List<String> variables, int test, int step) throws Exception{
+			ProjectionPlan plan = ProjectionPlan.compile(trace, variables);
+			TraceBlock block = trace.getTest(test);
 			
 			if(step==-1){
-				// If we want the whole test, just grab and return the test.
-				if(variables==null){
-					record= new ArrayList<String>(trace.get(test));
-				}else{
-					// Filter for correct variables.
-					ArrayList<String> testRaw = new ArrayList<String>(trace.get(test));
-					for(String row: testRaw){
-						String[] entries = row.split(",");
-						String toAdd = "";
-						for(int index: indexes){
-							toAdd=toAdd+entries[index]+",";
-						}
-						record.add(toAdd.substring(0,toAdd.length()-1));
-					}
-					
-				}
+				// If we want the whole test, grab every row.
+				return new TraceRecords(plan, block, 0, block.getRowCount(), false);
 			}else if(step>=0){
-				record.add(header);
-				
-				if(variables==null){
-					if(step+1<trace.get(test).size()){
-						record.add(trace.get(test).get(step+1));
-					}else{
-						String toAdd="";
-						
-						for(int index=0;index<trace.get(0).get(0).split(",").length;index++){
-							toAdd=toAdd+"0"+",";
-						}
-						
-						record.add(toAdd.substring(0,toAdd.length()-1));
-					}
-				}else{
-					if(step+1<trace.get(test).size()){
-						String row=trace.get(test).get(step+1);
-
-						String[] entries = row.split(",");
-						String toAdd = "";
-						for(int index: indexes){
-							toAdd=toAdd+entries[index]+",";
-						}
-						record.add(toAdd.substring(0,toAdd.length()-1));
-					}else{
-						String toAdd="";
-						
-						for(int index:indexes){
-							toAdd=toAdd+"0"+",";
-						}
-						
-						record.add(toAdd.substring(0,toAdd.length()-1));
-					}
-				}
+				// Dummy record if the step does not exist.
+				return new TraceRecords(plan, block, step, 1, step>=block.getRowCount());
 			}
 			
-			return record;
+			return new TraceRecords(plan, block, 0, 0, false);
 		}
 		
-		// Edit a line in a trace.
-		public ArrayList<ArrayList<String>> editTrace(ArrayList<ArrayList<String>> trace, String record, int test, int step) throws Exception{
-			ArrayList<String> testRecord = new ArrayList<String>(trace.get(test));
+		// Edit a line in a trace. The test is edited in place, and the step
+		// is marked dirty (and for rescoring).
+		public TraceTable editTrace(TraceTable trace, String record, int test, int step) throws Exception{
+			TraceBlock testRecord = trace.getWritableTest(test);
 			
-			if(step<testRecord.size()-1){
-				testRecord.set(step+1, record);
-			}else if(step==testRecord.size()-1){
-				testRecord.add(record);
+			if(step<testRecord.getRowCount()){
+				testRecord.setRow(step, record);
+			}else if(step==testRecord.getRowCount()){
+				testRecord.appendEdit(record);
 			}else{
-				throw new SteeringDataException("Specified a step not in the test: "+step+", length: "+(testRecord.size()-1));
+				throw new SteeringDataException("Specified a step not in the test: "+step+", length: "+testRecord.getRowCount());
+			}
+			if(steerer!=null && steerer.getScorer()!=null){
+				steerer.getScorer().stepEdited(trace, test, step);
 			}
-			
-			trace.set(test, testRecord);
 			
 			return trace;
 		}
 		
 		// Writes a trace to a file.
-		public void writeTraceToFile(ArrayList<ArrayList<String>> trace, String filename) throws Exception{
+		public void writeTraceToFile(TraceTable trace, String filename) throws Exception{
+			this.writeTraceToFile(trace, filename, steerer.getOffset());
+		}
+		
+		// Writes a trace to a file. Files named *.trb are written in binary format,
+		// and files named *.gz block-compressed.
+		// Files named *.tdelta only hold the differences from the trace this one
+		// was copied from (the oracle trace, for the steered trace).
+		public void writeTraceToFile(TraceTable trace, String filename, boolean isOffset) throws Exception{
+			if(filename.endsWith(BinaryTraceFile.EXTENSION)){
+				BinaryTraceFile.write(trace, filename);
+				return;
+			}else if(filename.endsWith(CompressedTraceFile.EXTENSION)){
+				CompressedTraceFile.write(trace, filename, isOffset);
+				return;
+			}else if(filename.endsWith(TraceDelta.EXTENSION)){
+				TraceTable base = trace.getParent();
+				if(base==null || base.getSource()==null){
+					throw new SteeringDataException("A trace delta needs a base trace read from a file: "+filename);
+				}
+				TraceDelta.write(trace, base, base.getSource().getFilename(), filename);
+				return;
+			}
+			
 			try{
-				boolean firstTest=true;
-				
-				FileWriter writer = new FileWriter(new File(filename));
+				BufferedWriter writer = new BufferedWriter(new FileWriter(new File(filename)));
 				
-				for(ArrayList<String> test: trace){
-					if(!firstTest){
+				for(int test=0;test<trace.getTestCount();test++){
+					if(test>0){
 						writer.write("\n");
 					}
-					boolean firstStep=true;
 					
-					for(String step: test){
-						if(firstStep && (steerer.getOffset() || firstTest)){
-							writer.write(step+"\n");
-						}else if(!firstStep){
-							writer.write(step+"\n");
-						}
-						
-						firstStep=false;
+					if(isOffset || test==0){
+						writer.write(trace.getHeaderLine()+"\n");
 					}
 					
-					firstTest=false;
+					TraceBlock block=trace.getTest(test);
+					for(int row=0;row<block.getRowCount();row++){
+						writer.write(block.getRow(row)+"\n");
+					}
 				}
 				
 				writer.close();
@@ -307,20 +395,19 @@ public class WorkerFunctions{
 			}
 		}
 		
-		// Edit a line in a trace.
-		public ArrayList<ArrayList<String>> removeRecords(ArrayList<ArrayList<String>> trace, int test, int lastStep) throws Exception{
-			ArrayList<String> testRecord = new ArrayList<String>(trace.get(test));
+		// Remove all records after the last step.
+		public TraceTable removeRecords(TraceTable trace, int test, int lastStep) throws Exception{
+			int rows = trace.getRowCount(test);
 
-			if(lastStep<testRecord.size()-1){
-				while(testRecord.size()>lastStep+1){
-					testRecord.remove(lastStep+1);
+			if(lastStep<rows){
+				trace.getWritableTest(test).truncate(lastStep);
+				if(steerer!=null && steerer.getScorer()!=null){
+					steerer.getScorer().testEdited(trace, test);
 				}
-			}else if(lastStep>=testRecord.size()){
-				throw new SteeringDataException("Specified a step not in the test: "+lastStep+", length: "+(testRecord.size()-1));
+			}else if(lastStep>rows){
+				throw new SteeringDataException("Specified a step not in the test: "+lastStep+", length: "+rows);
 			}
 
-			trace.set(test, testRecord);
-
 			return trace;
 		}
-}
\ No newline at end of file
+}
@@ -0,0 +1,124 @@
+/*	Z3Optimizer
+	Finds the lowest score of a steering step in a single call to z3's
+	optimizer.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+
+	README:
+		- Runs a locally installed z3 binary ("z3" on the path, or the z3=
+		  entry of the configuration file) as: z3 -smt2 -in
+		- The query is the injected model in SMT-LIB (see SmtLibEncoding),
+		  with "(minimize score_steered)" under the tolerances. One call
+		  replaces the direct match and the threshold search.
+		- minimize() returns the inputs of the optimum, or null if z3 finds
+		  no steered state within the tolerances (unsat) or cannot tell
+		  (unknown). getScore() is the optimum's score_steered.
+		- Goals are not needed, so the injected model can be built with any
+		  goal above 0.
+*/
+
+package steering;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+
+public class Z3Optimizer {
+
+	private String z3Path;
+	private double score=Double.NaN;
+	private String status="";
+
+	public Z3Optimizer(String path){
+		z3Path=path;
+	}
+
+	// Minimizes score_steered of the injected model in lustreFile, and returns
+	// the values of the inputs at the optimum. Null if there is none.
+	public HashMap<String,String> minimize(String lustreFile, List<String> inputs) throws Exception{
+		SmtLibEncoding encoding=new SmtLibEncoding(lustreFile);
+		score=Double.NaN;
+
+		StringBuilder script=new StringBuilder();
+		script.append("(set-option :produce-models true)\n");
+		script.append(encoding.getDeclarations());
+		script.append(encoding.getAssertions());
+		script.append("(minimize ").append(encoding.getScore()).append(")\n");
+		script.append("(check-sat)\n");
+		script.append(encoding.getValues(inputs)).append("\n");
+		script.append("(exit)\n");
+
+		ProcessBuilder builder=new ProcessBuilder(z3Path, "-smt2", "-in");
+		builder.redirectErrorStream(true);
+		Process process;
+		try{
+			process=builder.start();
+		}catch(IOException e){
+			throw new SteeringException("Unable to start z3 ("+z3Path+"): "+e.getMessage());
+		}
+
+		try{
+			BufferedWriter toSolver=new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.US_ASCII));
+			toSolver.write(script.toString());
+			toSolver.close();
+
+			// sat/unsat/unknown, then the values (if sat)
+			BufferedReader fromSolver=new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII));
+			status=this.readStatus(fromSolver);
+			StringBuilder answer=new StringBuilder();
+			String line;
+			while((line=fromSolver.readLine())!=null){
+				answer.append(line).append('\n');
+			}
+			fromSolver.close();
+			process.waitFor();
+
+			if(!status.equals("sat")){
+				return null;
+			}
+			HashMap<String,String> values=SmtLibEncoding.parseValues(answer.toString());
+			score=SmtLibEncoding.scoreOf(values);
+			values.remove("score_steered");
+			return values;
+		}finally{
+			process.destroy();
+		}
+	}
+
+	// First line that is not a warning, or an error.
+	private String readStatus(BufferedReader fromSolver) throws IOException, SteeringException{
+		String line;
+		while((line=fromSolver.readLine())!=null){
+			line=line.trim();
+			if(line.isEmpty() || line.startsWith("WARNING")){
+				continue;
+			}
+			if(line.startsWith("(error")){
+				throw new SteeringException("z3 error: "+line);
+			}
+			return line;
+		}
+		throw new SteeringException("No answer from z3");
+	}
+
+	// score_steered at the last optimum found (NaN if none).
+	public double getScore(){
+		return score;
+	}
+
+	// Answer to the last query: sat, unsat or unknown.
+	public String getStatus(){
+		return status;
+	}
+
+	public String getPath(){
+		return z3Path;
+	}
+}
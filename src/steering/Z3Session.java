@@ -0,0 +1,196 @@
+/*	Z3Session
+	Long-lived z3 process, checking the goals of a steering step
+	incrementally.
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+
+	README:
+		- Runs a locally installed z3 binary as: z3 -smt2 -in, talking to
+		  it over stdin/stdout. The process is started on the first step,
+		  and kept until close().
+		- openStep() pushes a scope holding the step's encoding (see
+		  SmtLibEncoding): the transition relation and the tolerances are
+		  sent once per step. closeStep() pops it again.
+		- Each goal is a push, assert, check-sat (and get-value when sat),
+		  pop, so a probe costs a solver check, not a jKind run (parsing,
+		  translation, and a new solver process).
+*/
+
+package steering;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+public class Z3Session {
+
+	private String z3Path;
+	private Process process;
+	private BufferedWriter toSolver;
+	private BufferedReader fromSolver;
+	// Encoding of the open step, null if none is open
+	private SmtLibEncoding encoding;
+	private List<String> inputs;
+	private HashMap<String,String> values;
+	private double score=Double.NaN;
+
+	public Z3Session(String path){
+		z3Path=path;
+	}
+
+	private void start() throws SteeringException{
+		ProcessBuilder builder=new ProcessBuilder(z3Path, "-smt2", "-in");
+		builder.redirectErrorStream(true);
+		try{
+			process=builder.start();
+		}catch(IOException e){
+			throw new SteeringException("Unable to start z3 ("+z3Path+"): "+e.getMessage());
+		}
+		toSolver=new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.US_ASCII));
+		fromSolver=new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII));
+		this.send("(set-option :produce-models true)");
+	}
+
+	// Sends the encoding of the injected model in lustreFile, in a new scope.
+	public void openStep(String lustreFile, List<String> stepInputs) throws Exception{
+		if(encoding!=null){
+			this.closeStep();
+		}
+		if(process==null){
+			this.start();
+		}
+
+		SmtLibEncoding stepEncoding=new SmtLibEncoding(lustreFile);
+		this.send("(push 1)");
+		this.send(stepEncoding.getDeclarations());
+		this.send(stepEncoding.getAssertions());
+		encoding=stepEncoding;
+		inputs=stepInputs;
+	}
+
+	// Drops the encoding of the open step.
+	public void closeStep() throws SteeringException{
+		if(encoding!=null){
+			encoding=null;
+			this.send("(pop 1)");
+		}
+	}
+
+	// Is there a steered state scoring exactly 0 (a direct match)?
+	public String checkMatch() throws SteeringException{
+		return this.check("(= "+encoding.getScore()+" 0.0)");
+	}
+
+	// Is there a steered state scoring below goal?
+	public String checkBelow(double goal) throws SteeringException{
+		return this.check("(< "+encoding.getScore()+" "+String.format(Locale.ROOT, "%.12f", goal)+")");
+	}
+
+	// Checks the open step under one more assertion: sat, unsat or unknown.
+	// When sat, getInputs() and getScore() give the state found.
+	private String check(String goal) throws SteeringException{
+		if(encoding==null){
+			throw new SteeringException("No step open in the z3 session");
+		}
+		values=null;
+		score=Double.NaN;
+
+		this.send("(push 1)\n(assert "+goal+")\n(check-sat)");
+		String status=this.readLine();
+		if(!status.equals("sat") && !status.equals("unsat") && !status.equals("unknown")){
+			throw new SteeringException("Unexpected z3 answer: "+status);
+		}
+		if(status.equals("sat")){
+			this.send(encoding.getValues(inputs));
+			values=SmtLibEncoding.parseValues(this.readSexp());
+			score=SmtLibEncoding.scoreOf(values);
+			values.remove("score_steered");
+		}
+		this.send("(pop 1)");
+
+		return status;
+	}
+
+	public HashMap<String,String> getInputs(){
+		return values;
+	}
+
+	public double getScore(){
+		return score;
+	}
+
+	// Stops z3, letting it exit first.
+	public void close(){
+		encoding=null;
+		if(process!=null){
+			try{
+				toSolver.write("(exit)\n");
+				toSolver.close();
+				process.waitFor(1, TimeUnit.SECONDS);
+			}catch(IOException e){
+				// Already gone
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			process.destroy();
+			process=null;
+		}
+	}
+
+	private void send(String commands) throws SteeringException{
+		try{
+			toSolver.write(commands);
+			toSolver.write("\n");
+			toSolver.flush();
+		}catch(IOException e){
+			throw new SteeringException("Unable to write to z3: "+e.getMessage());
+		}
+	}
+
+	// Next answer line, skipping blanks and warnings.
+	private String readLine() throws SteeringException{
+		try{
+			String line;
+			while((line=fromSolver.readLine())!=null){
+				line=line.trim();
+				if(line.isEmpty() || line.startsWith("WARNING")){
+					continue;
+				}
+				if(line.startsWith("(error")){
+					throw new SteeringException("z3 error: "+line);
+				}
+				return line;
+			}
+		}catch(IOException e){
+			throw new SteeringException("Unable to read from z3: "+e.getMessage());
+		}
+		throw new SteeringException("z3 stopped answering");
+	}
+
+	// Lines up to the end of one s-expression.
+	private String readSexp() throws SteeringException{
+		StringBuilder sexp=new StringBuilder();
+		int depth=0;
+		do{
+			String line=this.readLine();
+			for(int pos=0;pos<line.length();pos++){
+				if(line.charAt(pos)=='('){
+					depth++;
+				}else if(line.charAt(pos)==')'){
+					depth--;
+				}
+			}
+			sexp.append(line).append('\n');
+		}while(depth>0);
+		return sexp.toString();
+	}
+}
@@ -0,0 +1,89 @@
+/*	VectorScoringLoop
+	Scoring loops vectorized with the Java Vector API (jdk.incubator.vector).
+
+	Gregory Gay (greg@greggay.com)
+	Last Updated: 10/18/2026
+		- Initial file creation
+		- Rows scored a vector of lanes at a time, the rest by the scalar loop.
+		- Boolean variables add 1 through a mask of the lanes that differ (a
+		  blend, which is compiled to vector code on more CPUs than masked adds).
+		- Unnormalized variables skip the divisions, as the scalar loop does.
+
+	README:
+		- Optional. Compile and run with --add-modules jdk.incubator.vector
+		  (make simd, in bin). ScoringKernel loads this class by name, and
+		  falls back to ScalarScoringLoop if it cannot.
+		- Each lane is one row, worked out with the same operations as the
+		  scalar loop (no fused multiply-add), so scores are identical.
+		- Tests shorter than a vector are scored entirely by the scalar loop.
+		- Normalized variables are bound by the two divisions per value, and
+		  gain little. The gain is on unnormalized and boolean variables.
+*/
+
+package steering.simd;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import steering.ScalarScoringLoop;
+import steering.ScoringLoop;
+
+public class VectorScoringLoop implements ScoringLoop {
+
+	private static final VectorSpecies<Double> SPECIES=DoubleVector.SPECIES_PREFERRED;
+	private static final int LANES=SPECIES.length();
+	private static final DoubleVector ZERO=DoubleVector.zero(SPECIES);
+	private static final DoubleVector ONE=DoubleVector.broadcast(SPECIES,1.0);
+
+	public void addBool(double[] oVals, double[] sVals, double[] scores, int rows){
+		if(rows<LANES){
+			ScalarScoringLoop.addBool(oVals,sVals,scores,0,rows);
+			return;
+		}
+
+		int bound=SPECIES.loopBound(rows);
+		int row=0;
+
+		for(;row<bound;row+=LANES){
+			DoubleVector o=DoubleVector.fromArray(SPECIES,oVals,row);
+			DoubleVector s=DoubleVector.fromArray(SPECIES,sVals,row);
+			DoubleVector score=DoubleVector.fromArray(SPECIES,scores,row);
+			score.add(ZERO.blend(ONE,o.compare(VectorOperators.NE,s))).intoArray(scores,row);
+		}
+
+		ScalarScoringLoop.addBool(oVals,sVals,scores,row,rows);
+	}
+
+	public void addDistance(double[] oVals, double[] sVals, double[] scores, int rows, double offset, double scale, boolean squared){
+		if(rows<LANES){
+			ScalarScoringLoop.addDistance(oVals,sVals,scores,0,rows,offset,scale,squared);
+			return;
+		}
+
+		int bound=SPECIES.loopBound(rows);
+		int row=0;
+
+		// One loop per case, as in the scalar loops.
+		if(offset!=0.0 || scale!=1.0){
+			for(;row<bound;row+=LANES){
+				DoubleVector o=DoubleVector.fromArray(SPECIES,oVals,row);
+				DoubleVector s=DoubleVector.fromArray(SPECIES,sVals,row);
+				DoubleVector dist=o.sub(offset).div(scale).sub(s.sub(offset).div(scale));
+				DoubleVector score=DoubleVector.fromArray(SPECIES,scores,row);
+				score.add(squared ? dist.mul(dist) : dist.abs()).intoArray(scores,row);
+			}
+		}else if(squared){
+			for(;row<bound;row+=LANES){
+				DoubleVector dist=DoubleVector.fromArray(SPECIES,oVals,row).sub(DoubleVector.fromArray(SPECIES,sVals,row));
+				DoubleVector.fromArray(SPECIES,scores,row).add(dist.mul(dist)).intoArray(scores,row);
+			}
+		}else{
+			for(;row<bound;row+=LANES){
+				DoubleVector dist=DoubleVector.fromArray(SPECIES,oVals,row).sub(DoubleVector.fromArray(SPECIES,sVals,row));
+				DoubleVector.fromArray(SPECIES,scores,row).add(dist.abs()).intoArray(scores,row);
+			}
+		}
+
+		ScalarScoringLoop.addDistance(oVals,sVals,scores,row,rows,offset,scale,squared);
+	}
+}